@@ -0,0 +1,91 @@
+package primes;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks each {@link PrimeEngine}, computing the primes on a computer
+ * created for each call, like {@link PrimeComputer#computePrimes(long)}, and
+ * streaming them with {@link PrimeEngine#forEachPrime} rather than returning
+ * them all at once.
+ * <p>
+ * The engine parameter lists the built-in engines; {@code -p engine=NAME}
+ * selects any engine registered in {@link PrimeEngines}, and running this
+ * class directly benchmarks all the registered engines.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private long max;
+
+    @Param({"1", "2", "4"})
+    private int threads;
+
+    @Param({"TRIAL_DIVISION", "WHEEL", "SMALL_PRIMES", "MILLER_RABIN", "SEGMENTED_SIEVE", "LAZY_SIEVE", "CACHED_SIEVE"})
+    private String engine;
+
+    private PrimeEngine primeEngine;
+
+    /**
+     * Benchmarks all the engines registered in {@link PrimeEngines}.
+     *
+     * @param args unused
+     * @throws RunnerException if the benchmarks cannot run
+     */
+    public static void main(String[] args) throws RunnerException {
+        String[] names = PrimeEngines.all().stream().map(PrimeEngine::getName).toArray(String[]::new);
+        new Runner(new OptionsBuilder()
+                .include(EngineBenchmark.class.getSimpleName())
+                .param("engine", names)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        primeEngine = PrimeEngines.get(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        primeEngine = null;
+    }
+
+    @Benchmark
+    public long computePrimes() {
+        // lazy results are counted before the computer closes
+        try (PrimeComputer computer = new PrimeComputer(PrimeComputer.PoolKind.FIXED, threads)) {
+            return PrimeComputerBenchmark.count(primeEngine.primes(computer, max));
+        }
+    }
+
+    @Benchmark
+    public long forEachPrime() {
+        long[] count = new long[1];
+        try (PrimeComputer computer = new PrimeComputer(PrimeComputer.PoolKind.FIXED, threads)) {
+            primeEngine.forEachPrime(computer, 0, max, prime -> count[0] += prime & 1);
+        }
+        return count[0];
+    }
+
+}
@@ -0,0 +1,68 @@
+package primes;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the kinds of pool of {@link PrimeComputer}, virtual threads
+ * against platform threads, with several callers sharing the machine: the
+ * {@code shared} benchmark issues concurrent calls on one long-lived computer,
+ * the {@code perCall} benchmark creates a computer on each call, like the
+ * static methods do.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class PoolBenchmark {
+
+    @Param({"100000", "10000000"})
+    private long max;
+
+    @Param({"FIXED", "FORK_JOIN", "VIRTUAL"})
+    private PrimeComputer.PoolKind pool;
+
+    @Param({"4"})
+    private int threads;
+
+    private PrimeComputer computer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        computer = new PrimeComputer(pool, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        computer.close();
+    }
+
+    @Benchmark
+    public long shared() {
+        return PrimeComputerBenchmark.count(computer.primes(max, PrimeComputer.Engine.SEGMENTED_SIEVE));
+    }
+
+    @Benchmark
+    public long perCall() {
+        try (PrimeComputer perCall = new PrimeComputer(pool, threads)) {
+            return PrimeComputerBenchmark.count(perCall.primes(max, PrimeComputer.Engine.SEGMENTED_SIEVE));
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package primes;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks single-number primality tests on primes of increasing size, the
+ * worst case of trial division.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimalityTestBenchmark {
+
+    @Param({"1000003", "1000000007", "1000000000039"})
+    private long number;
+
+    @Benchmark
+    public boolean isPrime() {
+        return PrimeComputerTester.isPrime(number);
+    }
+
+    @Benchmark
+    public boolean wheel() {
+        return Wheel.isPrime(number);
+    }
+
+    @Benchmark
+    public boolean smallPrimes() {
+        return PrimalityTest.SMALL_PRIMES.isPrime(number);
+    }
+
+    @Benchmark
+    public boolean millerRabin() {
+        return MillerRabin.isPrime(number);
+    }
+
+}
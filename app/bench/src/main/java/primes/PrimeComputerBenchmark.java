@@ -0,0 +1,103 @@
+package primes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the entry points of {@link PrimeComputer}, to compare with the
+ * sequential reference of {@link ReferenceBenchmark}. Every benchmark
+ * iterates the whole result, so that lazy results are measured too, and
+ * returns the number of primes to keep the work from being optimized away.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimeComputerBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private long max;
+
+    @Param({"1", "2", "4"})
+    private int threads;
+
+    private Path cacheFile;
+    private PrimeCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty(PrimeComputer.THREADS_PROPERTY, Integer.toString(threads));
+        cacheFile = Files.createTempFile("primes", ".cache");
+        cache = new PrimeCache(cacheFile);
+        cache.primes(max);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        Files.deleteIfExists(cacheFile);
+        System.clearProperty(PrimeComputer.THREADS_PROPERTY);
+    }
+
+    @Benchmark
+    public long computePrimes() {
+        return count(PrimeComputer.computePrimes(max));
+    }
+
+    @Benchmark
+    public long computePrimesRange() {
+        return count(PrimeComputer.computePrimes(max, 2 * max));
+    }
+
+    @Benchmark
+    public long primeCache() throws IOException {
+        return count(cache.primes(max));
+    }
+
+    @Benchmark
+    public long computePrimesCompact() {
+        return count(PrimeComputer.computePrimesCompact(max, PrimeComputer.Engine.SEGMENTED_SIEVE));
+    }
+
+    @Benchmark
+    public long countPrimes() {
+        return PrimeComputer.countPrimes(max);
+    }
+
+    @Benchmark
+    public long countPrimesSieve() {
+        return PrimeComputer.countPrimes(0, max);
+    }
+
+    static long count(Iterable<Long> primes) {
+        long count = 0;
+        if (primes instanceof LongIterable) {
+            for (java.util.PrimitiveIterator.OfLong i = ((LongIterable) primes).iterator(); i.hasNext(); ) {
+                count += i.nextLong() & 1;
+            }
+        } else {
+            for (Long prime : primes) {
+                count += prime & 1;
+            }
+        }
+        return count;
+    }
+
+}
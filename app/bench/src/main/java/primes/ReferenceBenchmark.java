@@ -0,0 +1,36 @@
+package primes;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the sequential reference {@link PrimeComputerTester#getPrimes},
+ * the baseline of {@link PrimeComputerBenchmark}. The reference runs on the
+ * calling thread only, hence no thread count parameter.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReferenceBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private long max;
+
+    @Benchmark
+    public long getPrimes() {
+        return PrimeComputerBenchmark.count(PrimeComputerTester.getPrimes(max));
+    }
+
+}
@@ -0,0 +1,380 @@
+package primes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Balances a range of numbers across workers dynamically: rather than being
+ * assigned a fixed part of the range up front, each worker repeatedly claims
+ * the next chunk from a shared atomic cursor until the range is exhausted. A
+ * worker slowed down by costly chunks or by the host simply claims fewer of
+ * them, so that all the workers finish at about the same time.
+ * <p>
+ * On a pool of virtual threads, such as
+ * {@link java.util.concurrent.Executors#newVirtualThreadPerTaskExecutor}, the
+ * scheduler rather runs each chunk on its own thread, a semaphore capping the
+ * number of chunks processed at once. The workers of the report are then the
+ * permits of the semaphore.
+ */
+public class ChunkScheduler {
+
+    /**
+     * The processing applied to each chunk.
+     */
+    @FunctionalInterface
+    public interface ChunkTask {
+
+        /**
+         * Processes the chunk {@code [from, to)}.
+         *
+         * @param index the index of the chunk in the range
+         * @param from the lower bound of the chunk (included)
+         * @param to the upper bound of the chunk (excluded)
+         * @return the counts of the chunk; the scheduler adds the timing
+         * @throws Exception if the chunk cannot be processed
+         */
+        RunReport.ChunkStats process(long index, long from, long to) throws Exception;
+    }
+
+    private final ExecutorService pool;
+    private final int workers;
+    private final Semaphore permits;
+
+    /**
+     * Creates a scheduler running the specified number of workers on the
+     * specified pool, each worker claiming chunks until the range is exhausted.
+     *
+     * @param pool the pool running the workers
+     * @param workers the number of workers
+     */
+    public ChunkScheduler(ExecutorService pool, int workers) {
+        this(pool, workers, null);
+    }
+
+    /**
+     * Creates a scheduler running each chunk as a task of its own on the
+     * specified pool, the specified semaphore capping the number of chunks
+     * processed at once. The semaphore may be shared by several schedulers,
+     * but must have at most {@code permits} permits.
+     *
+     * @param pool the pool running the chunks, typically of virtual threads
+     * @param permits the number of permits of the semaphore, which is also the
+     * number of lanes of the report
+     * @param semaphore the semaphore capping the concurrency
+     */
+    public ChunkScheduler(ExecutorService pool, int permits, Semaphore semaphore) {
+        if (permits < 1) {
+            throw new IllegalArgumentException((semaphore == null ? "workers" : "permits") + " must be positive");
+        }
+        this.pool = pool;
+        this.workers = permits;
+        this.permits = semaphore;
+    }
+
+    /**
+     * Processes the range {@code [from, to)} chunk by chunk, on the specified
+     * number of workers, and waits for the range to be fully processed.
+     *
+     * @param from the lower bound of the range (included)
+     * @param to the upper bound of the range (excluded)
+     * @param chunkSize the number of integers per chunk
+     * @param pool the pool running the workers
+     * @param workers the number of workers
+     * @param task the processing applied to each chunk
+     * @return the report of the run, with the statistics of every chunk
+     */
+    public static RunReport run(long from, long to, long chunkSize, ExecutorService pool,
+                                int workers, ChunkTask task) {
+        return new ChunkScheduler(pool, workers).run(from, to, chunkSize, task);
+    }
+
+    /**
+     * Processes the range {@code [from, to)} chunk by chunk and waits for the
+     * range to be fully processed.
+     *
+     * @param from the lower bound of the range (included)
+     * @param to the upper bound of the range (excluded)
+     * @param chunkSize the number of integers per chunk
+     * @param task the processing applied to each chunk
+     * @return the report of the run, with the statistics of every chunk
+     */
+    public RunReport run(long from, long to, long chunkSize, ChunkTask task) {
+        return submit(from, to, chunkSize, task).await();
+    }
+
+    /**
+     * Starts processing the range {@code [from, to)} chunk by chunk, and
+     * returns without waiting: the caller is free to do other work, such as
+     * consuming the results of the chunks, before {@link Run#await awaiting}
+     * the run.
+     * <p>
+     * With one task per chunk, the calling thread takes a permit of the
+     * semaphore before submitting each chunk, and the task releases it once
+     * done: at most as many tasks as permits exist at once, whatever the
+     * number of chunks, and the method returns once the last chunk is
+     * submitted.
+     *
+     * @param from the lower bound of the range (included)
+     * @param to the upper bound of the range (excluded)
+     * @param chunkSize the number of integers per chunk
+     * @param task the processing applied to each chunk
+     * @return the run in progress
+     */
+    public Run submit(long from, long to, long chunkSize, ChunkTask task) {
+
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        long start = System.nanoTime();
+        AtomicLong cursor = new AtomicLong(from);
+        List<RunReport.ChunkStats> chunks = Collections.synchronizedList(new ArrayList<>());
+
+        List<Future<?>> futures = new ArrayList<>();
+        if (permits == null) {
+            for (int i = 0; i < workers; i++) {
+                futures.add(pool.submit(new Worker(from, to, chunkSize, cursor, task, start, chunks)));
+            }
+            return new Run(start, to, cursor, chunks, futures, null);
+        }
+
+        Lanes lanes = new Lanes(workers, start);
+        Run run = new Run(start, to, cursor, chunks, futures, lanes);
+        // a failed chunk moves the cursor to the end, which stops the submission
+        for (long low = from; low < to && low >= from && cursor.get() < to; low += chunkSize) {
+            long index = (low - from) / chunkSize;
+            long chunkFrom = low;
+            long chunkTo = low + Math.min(chunkSize, to - low);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                run.cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while submitting chunks", e);
+            }
+            run.started();
+            try {
+                pool.submit(() -> {
+                    try {
+                        chunks.add(lanes.process(cursor, to, task, index, chunkFrom, chunkTo));
+                    } catch (Exception | Error e) {
+                        run.fail(e);
+                    } finally {
+                        permits.release();
+                        run.finished();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                run.finished();
+                run.fail(e);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * A run in progress, started by {@link #submit}.
+     */
+    public static class Run {
+
+        private final long start;
+        private final long to;
+        private final AtomicLong cursor;
+        private final List<RunReport.ChunkStats> chunks;
+        private final List<Future<?>> futures;
+        private final Lanes lanes;
+        private int inFlight;
+        private Throwable failure;
+
+        private Run(long start, long to, AtomicLong cursor, List<RunReport.ChunkStats> chunks,
+                    List<Future<?>> futures, Lanes lanes) {
+            this.start = start;
+            this.to = to;
+            this.cursor = cursor;
+            this.chunks = chunks;
+            this.futures = futures;
+            this.lanes = lanes;
+        }
+
+        /**
+         * Stops the run: the chunks not yet claimed are skipped. The chunks
+         * being processed still complete; {@link #await} waits for them.
+         */
+        public void cancel() {
+            cursor.set(to);
+        }
+
+        private synchronized void started() {
+            inFlight++;
+        }
+
+        private synchronized void finished() {
+            if (--inFlight == 0) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+            // stop the submission and the other tasks at their next chunk
+            cancel();
+        }
+
+        /**
+         * Waits for the range to be fully processed.
+         *
+         * @return the report of the run, with the statistics of every chunk
+         * @throws IllegalStateException if a chunk failed, or if interrupted
+         * while waiting; the run is then cancelled
+         */
+        public RunReport await() {
+            if (lanes != null) {
+                synchronized (this) {
+                    try {
+                        while (inFlight > 0) {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        cancel();
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted while processing chunks", e);
+                    }
+                    if (failure != null) {
+                        throw new IllegalStateException("chunk task failed", failure);
+                    }
+                }
+                return new RunReport(System.nanoTime() - start, lanes.stats(), chunks);
+            }
+
+            List<RunReport.WorkerStats> stats = new ArrayList<>();
+            try {
+                for (Future<?> future : futures) {
+                    Object result = future.get();
+                    if (result instanceof RunReport.WorkerStats) {
+                        stats.add((RunReport.WorkerStats) result);
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while processing chunks", e);
+            } catch (ExecutionException e) {
+                // stop the other workers at their next claim
+                cancel();
+                throw new IllegalStateException("chunk task failed", e.getCause());
+            }
+            return new RunReport(System.nanoTime() - start, stats, chunks);
+        }
+    }
+
+    /**
+     * The permits of a run with one task per chunk: the task holding a permit
+     * also holds one of the lanes, which accumulate the statistics reported as
+     * workers.
+     */
+    private static class Lanes {
+
+        private final long runStart;
+        private final ConcurrentLinkedQueue<Integer> free = new ConcurrentLinkedQueue<>();
+        private final long[] chunks;
+        private final long[] busy;
+        private final long[] finish;
+        private final String[] names;
+
+        Lanes(int count, long runStart) {
+            this.runStart = runStart;
+            this.names = new String[count];
+            this.chunks = new long[count];
+            this.busy = new long[count];
+            this.finish = new long[count];
+            for (int i = 0; i < count; i++) {
+                free.add(i);
+                names[i] = "lane-" + i;
+            }
+        }
+
+        RunReport.ChunkStats process(AtomicLong cursor, long to, ChunkTask task,
+                                     long index, long from, long chunkTo) throws Exception {
+            // the queue hands the lane statistics over from one task to the
+            // next; the permits of the caller cap the tasks to the lanes
+            int lane = free.remove();
+            try {
+                if (cursor.get() >= to) {
+                    // another chunk failed: skip this one
+                    return new RunReport.ChunkStats(index, from, chunkTo, 0, 0);
+                }
+                long start = System.nanoTime();
+                RunReport.ChunkStats stats = task.process(index, from, chunkTo);
+                long end = System.nanoTime();
+                chunks[lane]++;
+                busy[lane] += end - start;
+                finish[lane] = end - runStart;
+                return stats.withTiming(names[lane], start - runStart, end - start);
+            } finally {
+                free.add(lane);
+            }
+        }
+
+        List<RunReport.WorkerStats> stats() {
+            List<RunReport.WorkerStats> stats = new ArrayList<>();
+            for (int i = 0; i < chunks.length; i++) {
+                stats.add(new RunReport.WorkerStats(names[i], chunks[i], busy[i], finish[i]));
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Claims and processes chunks until the range is exhausted.
+     */
+    private static class Worker implements Callable<RunReport.WorkerStats> {
+
+        private final long from;
+        private final long to;
+        private final long chunkSize;
+        private final AtomicLong cursor;
+        private final ChunkTask task;
+        private final long runStart;
+        private final List<RunReport.ChunkStats> chunkStats;
+
+        Worker(long from, long to, long chunkSize, AtomicLong cursor, ChunkTask task,
+               long runStart, List<RunReport.ChunkStats> chunkStats) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.cursor = cursor;
+            this.task = task;
+            this.runStart = runStart;
+            this.chunkStats = chunkStats;
+        }
+
+        @Override
+        public RunReport.WorkerStats call() throws Exception {
+            String name = Thread.currentThread().getName();
+            List<RunReport.ChunkStats> processed = new ArrayList<>();
+            long busy = 0;
+            long low;
+            while ((low = cursor.getAndAdd(chunkSize)) < to && low >= from) {
+                long start = System.nanoTime();
+                RunReport.ChunkStats stats = task.process((low - from) / chunkSize, low,
+                        low + Math.min(chunkSize, to - low));
+                long elapsed = System.nanoTime() - start;
+                busy += elapsed;
+                processed.add(stats.withTiming(name, start - runStart, elapsed));
+            }
+            chunkStats.addAll(processed);
+            return new RunReport.WorkerStats(name, processed.size(), busy, System.nanoTime() - runStart);
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package primes;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compact list of primes, storing the gaps between consecutive odd primes
+ * rather than the primes themselves. The gaps are even, and half of a gap
+ * fits in an unsigned byte as long as the gap is at most 510, which holds for
+ * all the primes below 3.0 * 10^11, the first larger gap being 514 after
+ * 304,599,508,537. A list takes about one byte per prime, eight times less
+ * than a {@code long[]} and twenty times less than a {@code List<Long>}: the
+ * 50,847,534 primes below 10^9 take 57 MB.
+ * <p>
+ * A list holds at most {@code 2^31 - 9} primes, which reach about
+ * 5 * 10^10.
+ * <p>
+ * Every {@link #SKIP_INTERVAL} primes, a skip index records the prime itself,
+ * so that {@link #get(long)} decodes at most {@code SKIP_INTERVAL - 1} gaps.
+ * Iterating decodes the gaps sequentially, without allocating.
+ *
+ * @see PrimeComputer#computePrimesCompact(long, PrimeComputer.Engine)
+ */
+public class GapPrimes implements LongIterable {
+
+    /**
+     * Number of primes between two entries of the skip index.
+     */
+    public static final int SKIP_INTERVAL = 64;
+
+    private final boolean holdsTwo;
+    private final int oddCount;
+    private final byte[] gaps;
+    private final long[] skips;
+
+    private GapPrimes(boolean holdsTwo, int oddCount, byte[] gaps, long[] skips) {
+        this.holdsTwo = holdsTwo;
+        this.oddCount = oddCount;
+        this.gaps = gaps;
+        this.skips = skips;
+    }
+
+    /**
+     * Returns the compact list of the specified primes.
+     *
+     * @param primes the primes, in ascending order
+     * @return the compact list of the primes
+     */
+    public static GapPrimes of(LongIterable primes) {
+        Builder builder = new Builder();
+        PrimitiveIterator.OfLong iterator = primes.iterator();
+        while (iterator.hasNext()) {
+            builder.add(iterator.nextLong());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of primes of this list.
+     *
+     * @return the number of primes
+     */
+    public long size() {
+        return oddCount + (holdsTwo ? 1 : 0);
+    }
+
+    /**
+     * Returns the prime at the specified index of this list.
+     *
+     * @param index the index of the prime, from 0
+     * @return the prime at the specified index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public long get(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        if (holdsTwo) {
+            if (index == 0) {
+                return 2;
+            }
+            index--;
+        }
+        int odd = (int) index;
+        long prime = skips[odd / SKIP_INTERVAL];
+        // gaps[j] is the gap between the odd primes j and j + 1
+        for (int j = odd / SKIP_INTERVAL * SKIP_INTERVAL; j < odd; j++) {
+            prime += 2 * (gaps[j] & 0xFF);
+        }
+        return prime;
+    }
+
+    /**
+     * Returns an iterator decoding the gaps of this list, in ascending order.
+     *
+     * @return an iterator over the primes of this list
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+
+            private boolean two = holdsTwo;
+            private int next;
+            private long prime;
+
+            @Override
+            public boolean hasNext() {
+                return two || next < oddCount;
+            }
+
+            @Override
+            public long nextLong() {
+                if (two) {
+                    two = false;
+                    return 2;
+                }
+                if (next >= oddCount) {
+                    throw new NoSuchElementException();
+                }
+                prime = next == 0 ? skips[0] : prime + 2 * (gaps[next - 1] & 0xFF);
+                next++;
+                return prime;
+            }
+        };
+    }
+
+    /**
+     * Returns the primes of this list in a new array.
+     *
+     * @return an array holding the primes, in ascending order
+     */
+    @Override
+    public long[] toArray() {
+        long[] primes = new long[(int) size()];
+        PrimitiveIterator.OfLong iterator = iterator();
+        for (int i = 0; i < primes.length; i++) {
+            primes[i] = iterator.nextLong();
+        }
+        return primes;
+    }
+
+    /**
+     * Returns the number of bytes of the arrays of this list.
+     *
+     * @return the size of the gaps and of the skip index, in bytes
+     */
+    public long byteSize() {
+        return gaps.length + (long) Long.BYTES * skips.length;
+    }
+
+    /**
+     * Builds a {@link GapPrimes} list from primes added in ascending order.
+     * The builder is not thread-safe.
+     */
+    public static class Builder {
+
+        private boolean holdsTwo;
+        private int oddCount;
+        private long last;
+        private byte[] gaps = new byte[256];
+        private long[] skips = new long[4];
+
+        /**
+         * Adds the specified prime, which must be greater than the primes
+         * already added.
+         *
+         * @param prime the prime to add
+         * @return this builder
+         * @throws IllegalArgumentException if the prime is not greater than the
+         * previous one, or too far from it to be encoded
+         * @throws IllegalStateException if the list is full
+         */
+        public Builder add(long prime) {
+            if (prime == 2 && !holdsTwo && oddCount == 0) {
+                holdsTwo = true;
+                return this;
+            }
+            if ((prime & 1) == 0 || oddCount > 0 && prime <= last || prime < 3) {
+                throw new IllegalArgumentException("not a prime in ascending order: " + prime);
+            }
+            if (oddCount == Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("too many primes for a compact list");
+            }
+            if (oddCount > 0) {
+                long half = (prime - last) / 2;
+                if (half > 0xFF) {
+                    throw new IllegalArgumentException("gap too large to encode: " + last + " to " + prime);
+                }
+                if (oddCount - 1 == gaps.length) {
+                    gaps = Arrays.copyOf(gaps, (int) Math.min(Integer.MAX_VALUE - 8, gaps.length * 3L / 2));
+                }
+                gaps[oddCount - 1] = (byte) half;
+            }
+            if (oddCount % SKIP_INTERVAL == 0) {
+                int skip = oddCount / SKIP_INTERVAL;
+                if (skip == skips.length) {
+                    skips = Arrays.copyOf(skips, skips.length * 2);
+                }
+                skips[skip] = prime;
+            }
+            last = prime;
+            oddCount++;
+            return this;
+        }
+
+        /**
+         * Returns the list of the primes added, trimmed to size.
+         *
+         * @return the compact list
+         */
+        public GapPrimes build() {
+            return new GapPrimes(holdsTwo, oddCount,
+                    Arrays.copyOf(gaps, Math.max(0, oddCount - 1)),
+                    Arrays.copyOf(skips, (oddCount + SKIP_INTERVAL - 1) / SKIP_INTERVAL));
+        }
+    }
+
+}
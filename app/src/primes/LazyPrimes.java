@@ -0,0 +1,250 @@
+package primes;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primes of a range {@code [from, max)}, computed on demand: each iterator
+ * sieves the segments as the consumer reaches them, while a few threads sieve
+ * the next segments ahead of it. Nothing is computed before the first iterator
+ * is created; the first prime is then available once the base primes, up to
+ * the square root of the upper bound, and one segment have been sieved. The
+ * memory used depends on the segment size and the read-ahead, not on the
+ * upper bound.
+ * <p>
+ * An iterator allocates its threads on creation and releases them once it is
+ * exhausted or {@link SegmentIterator#close() closed}. The threads of an
+ * iterator abandoned early also terminate on their own, after being idle for
+ * {@link #KEEP_ALIVE_SECONDS}.
+ *
+ * @see PrimeComputer#computePrimesLazily(long, int)
+ */
+public class LazyPrimes implements LongIterable {
+
+    /**
+     * Number of seconds the threads of an abandoned iterator stay alive.
+     */
+    public static final long KEEP_ALIVE_SECONDS = 1;
+
+    private final long from;
+    private final long max;
+    private final int readAhead;
+    private final ExecutorService sharedPool;
+    private final Semaphore permits;
+    private volatile int[] basePrimes;
+
+    /**
+     * Creates the primes up to the specified upper bound (excluded).
+     *
+     * @param max the upper bound of primes
+     * @param readAhead the number of segments sieved ahead of the consumer,
+     * which is also the number of threads of each iterator
+     */
+    public LazyPrimes(long max, int readAhead) {
+        this(0, max, readAhead);
+    }
+
+    /**
+     * Creates the primes of the range {@code [from, max)}.
+     *
+     * @param from the lower bound of primes (included)
+     * @param max the upper bound of primes (excluded)
+     * @param readAhead the number of segments sieved ahead of the consumer,
+     * which is also the number of threads of each iterator
+     */
+    public LazyPrimes(long from, long max, int readAhead) {
+        this(from, max, readAhead, null);
+    }
+
+    /**
+     * Creates the primes of the range {@code [from, max)}, sieved on the
+     * specified pool rather than on threads owned by each iterator. The pool
+     * must remain open while the primes are iterated.
+     *
+     * @param from the lower bound of primes (included)
+     * @param max the upper bound of primes (excluded)
+     * @param readAhead the number of segments sieved ahead of the consumer
+     * @param pool the pool sieving the segments, or {@code null} for each
+     * iterator to own its threads
+     * @throws IllegalArgumentException if {@code max} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public LazyPrimes(long from, long max, int readAhead, ExecutorService pool) {
+        this(from, max, readAhead, pool, null);
+    }
+
+    /**
+     * Creates the primes of the range {@code [from, max)}, sieved on the
+     * specified pool, each segment holding a permit of the specified
+     * semaphore while sieved. A pool of virtual threads thus shares the cap on
+     * the concurrency of the other work of the pool.
+     *
+     * @param from the lower bound of primes (included)
+     * @param max the upper bound of primes (excluded)
+     * @param readAhead the number of segments sieved ahead of the consumer
+     * @param pool the pool sieving the segments, or {@code null} for each
+     * iterator to own its threads
+     * @param permits the semaphore capping the segments sieved at once, or
+     * {@code null} for no cap beyond the pool
+     * @throws IllegalArgumentException if {@code max} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public LazyPrimes(long from, long max, int readAhead, ExecutorService pool, Semaphore permits) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException("read-ahead must be positive");
+        }
+        if (from < 0) {
+            throw new IllegalArgumentException("from is negative");
+        }
+        SegmentedSieve.checkBound(max);
+        this.from = from;
+        this.max = max;
+        this.readAhead = readAhead;
+        this.sharedPool = pool;
+        this.permits = permits;
+    }
+
+    /**
+     * Returns a new iterator, which starts sieving the first segments right
+     * away. The first iterator also computes the base primes, up to the square
+     * root of the upper bound, which the next ones reuse.
+     *
+     * @return an iterator over the primes, in ascending order
+     */
+    @Override
+    public SegmentIterator iterator() {
+        return new SegmentIterator(basePrimes());
+    }
+
+    private int[] basePrimes() {
+        int[] primes = basePrimes;
+        if (primes == null) {
+            synchronized (this) {
+                primes = basePrimes;
+                if (primes == null) {
+                    primes = SegmentedSieve.basePrimes(SegmentedSieve.sqrt(Math.max(0, max - 1)));
+                    basePrimes = primes;
+                }
+            }
+        }
+        return primes;
+    }
+
+    /**
+     * Iterates over the primes segment by segment, keeping up to
+     * {@code readAhead} segments being sieved ahead of the consumer.
+     */
+    public class SegmentIterator implements PrimitiveIterator.OfLong, AutoCloseable {
+
+        private final int[] basePrimes;
+        private final ExecutorService pool;
+        private final boolean ownsPool;
+        private final ArrayDeque<Future<OddBitSieve>> pending = new ArrayDeque<>();
+        private long nextSegment;
+        private PrimitiveIterator.OfLong current;
+
+        SegmentIterator(int[] basePrimes) {
+            this.basePrimes = basePrimes;
+            ownsPool = sharedPool == null;
+            if (ownsPool) {
+                ThreadPoolExecutor owned = new ThreadPoolExecutor(readAhead, readAhead,
+                        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "lazy-primes");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                owned.allowCoreThreadTimeOut(true);
+                pool = owned;
+            } else {
+                pool = sharedPool;
+            }
+            nextSegment = from;
+            readAhead();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                Future<OddBitSieve> segment = pending.poll();
+                if (segment == null) {
+                    close();
+                    return false;
+                }
+                current = await(segment).iterator();
+                readAhead();
+            }
+            return true;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.nextLong();
+        }
+
+        /**
+         * Stops sieving and releases the threads of this iterator, if it owns
+         * them.
+         */
+        @Override
+        public void close() {
+            for (Future<OddBitSieve> segment : pending) {
+                segment.cancel(true);
+            }
+            pending.clear();
+            nextSegment = max;
+            if (ownsPool) {
+                pool.shutdownNow();
+            }
+        }
+
+        private void readAhead() {
+            while (pending.size() < readAhead && nextSegment < max) {
+                long low = nextSegment;
+                long high = low + Math.min(max - low, SegmentedSieve.SEGMENT_SIZE - low % SegmentedSieve.SEGMENT_SIZE);
+                // the permit is taken by the task rather than here, so that a
+                // segment cancelled before running holds none
+                pending.add(pool.submit(() -> {
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    try {
+                        OddBitSieve segment = new OddBitSieve(low, high);
+                        SegmentedSieve.sieve(segment, low, high, basePrimes);
+                        return segment;
+                    } finally {
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    }
+                }));
+                nextSegment = high;
+            }
+        }
+
+        private OddBitSieve await(Future<OddBitSieve> segment) {
+            try {
+                return segment.get();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while sieving", e);
+            } catch (ExecutionException e) {
+                close();
+                throw new IllegalStateException("segment task failed", e.getCause());
+            }
+        }
+    }
+
+}
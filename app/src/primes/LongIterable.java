@@ -0,0 +1,50 @@
+package primes;
+
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An {@code Iterable} over primitive {@code long} values. It remains an
+ * {@code Iterable<Long>} for compatibility, but also offers views that do not
+ * box the values: a {@link PrimitiveIterator.OfLong}, a {@link LongStream} and
+ * a {@code long[]}.
+ * <p>
+ * The result types of {@link PrimeComputer#computePrimes} implement this
+ * interface; their values come out in ascending order.
+ */
+public interface LongIterable extends Iterable<Long> {
+
+    /**
+     * Returns an iterator over the values; use {@code nextLong()} rather than
+     * {@code next()} to avoid boxing.
+     *
+     * @return a primitive iterator over the values
+     */
+    @Override
+    PrimitiveIterator.OfLong iterator();
+
+    /**
+     * Returns a sequential stream over the values.
+     *
+     * @return a stream over the values
+     */
+    default LongStream stream() {
+        int characteristics = Spliterator.ORDERED | Spliterator.SORTED
+                | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.longStream(
+                Spliterators.spliteratorUnknownSize(iterator(), characteristics), false);
+    }
+
+    /**
+     * Returns the values in a new array.
+     *
+     * @return an array holding the values, in iteration order
+     */
+    default long[] toArray() {
+        return stream().toArray();
+    }
+
+}
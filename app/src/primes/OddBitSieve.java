@@ -0,0 +1,270 @@
+package primes;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Bit-packed store of the odd numbers of a range {@code [from, to)}, using one
+ * bit per odd number: bit {@code i} stands for number {@code origin + 2i + 1},
+ * where the origin is {@code from} rounded down to a multiple of
+ * {@link #WORD_SPAN}. The even numbers are not stored at all; 2 is the only
+ * even prime and is handled apart.
+ * <p>
+ * The store starts with every odd number of the range greater than 1 marked as
+ * a candidate; engines then clear the composites, and the marked numbers left
+ * are the primes. Iterating the store returns them in ascending order, 2
+ * included when it lies in the range.
+ * <p>
+ * The store is not synchronized, but threads may clear numbers concurrently as
+ * long as they work on disjoint ranges aligned on {@link #WORD_SPAN}, since
+ * such ranges never share a word.
+ */
+public class OddBitSieve implements LongIterable {
+
+    /**
+     * Number of integers covered by one word of the store.
+     */
+    public static final int WORD_SPAN = 2 * Long.SIZE;
+
+    /**
+     * Largest range a store can cover, about 2.7 * 10^11 integers: its words
+     * are held in a single array.
+     */
+    public static final long MAX_SPAN = (long) (Integer.MAX_VALUE - 8) * WORD_SPAN;
+
+    private final long from;
+    private final long to;
+    private final long origin;
+    private final long[] words;
+
+    /**
+     * Creates a store of the odd numbers up to the specified upper bound
+     * (excluded), all of them greater than 1 being marked as candidates.
+     *
+     * @param limit the upper bound of the store
+     */
+    public OddBitSieve(long limit) {
+        this(0, Math.max(0, limit));
+    }
+
+    /**
+     * Creates a store of the odd numbers of the range {@code [from, to)}, all of
+     * them greater than 1 being marked as candidates.
+     *
+     * @param from the lower bound of the store (included)
+     * @param to the upper bound of the store (excluded)
+     */
+    public OddBitSieve(long from, long to) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("invalid range: [" + from + ", " + to + ")");
+        }
+        long origin = from / WORD_SPAN * WORD_SPAN;
+        if (to - origin > MAX_SPAN) {
+            throw new IllegalArgumentException("range is too large: [" + from + ", " + to + ")");
+        }
+        this.from = from;
+        this.to = to;
+        this.origin = origin;
+        this.words = new long[(int) ((to - origin + WORD_SPAN - 1) / WORD_SPAN)];
+        Arrays.fill(words, -1L);
+        if (words.length == 0) {
+            return;
+        }
+        // clear the bits past the upper bound, then the bits below the lower
+        // bound, then 1, which is not prime
+        long bits = (to - origin) / 2;
+        if (bits % Long.SIZE != 0) {
+            words[words.length - 1] = -1L >>> (Long.SIZE - bits % Long.SIZE);
+        }
+        if (bits == (long) words.length * Long.SIZE - Long.SIZE) {
+            words[words.length - 1] = 0;
+        }
+        words[0] &= -1L << ((from - origin) / 2);
+        if (from <= 1 && 1 < to) {
+            // the origin is then 0, and 1 is bit 0
+            words[0] &= ~1L;
+        }
+    }
+
+    /**
+     * Returns the lower bound (included) of this store.
+     *
+     * @return the lower bound of this store
+     */
+    public long from() {
+        return from;
+    }
+
+    /**
+     * Returns the upper bound (excluded) of this store.
+     *
+     * @return the upper bound of this store
+     */
+    public long limit() {
+        return to;
+    }
+
+    /**
+     * Checks whether the specified number is marked in this store.
+     *
+     * @param number the number to check
+     * @return {@code true} if the number is 2 or a marked odd number, and
+     * {@code false} otherwise
+     */
+    public boolean get(long number) {
+        if (number < from || number >= to) {
+            return false;
+        }
+        if ((number & 1) == 0) {
+            return number == 2;
+        }
+        long bit = (number - origin) >>> 1;
+        return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Clears the specified odd number, meaning it is not prime.
+     *
+     * @param number the odd number to clear
+     */
+    public void clear(long number) {
+        long bit = (number - origin) >>> 1;
+        words[(int) (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    /**
+     * Returns the smallest marked odd number greater than or equal to the
+     * specified number.
+     *
+     * @param number the number to start from
+     * @return the next marked odd number, or {@code -1} if there is none
+     */
+    public long next(long number) {
+        number = Math.max(number, from);
+        if (number >= to) {
+            return -1;
+        }
+        long bit = (number - origin) >>> 1;
+        int index = (int) (bit >>> 6);
+        long word = words[index] & (-1L << bit);
+        while (word == 0) {
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+        return origin + 2 * ((long) index * Long.SIZE + Long.numberOfTrailingZeros(word)) + 1;
+    }
+
+    /**
+     * Returns the words of this store, bit {@code i} of word {@code w} standing
+     * for number {@code from() - from() % WORD_SPAN + 2 * (64w + i) + 1}. The
+     * array is not copied.
+     *
+     * @return the words of this store
+     */
+    long[] words() {
+        return words;
+    }
+
+    private boolean holdsTwo() {
+        return from <= 2 && 2 < to;
+    }
+
+    /**
+     * Returns the number of primes in this store, 2 included.
+     *
+     * @return the number of marked numbers
+     */
+    public long count() {
+        long count = holdsTwo() ? 1 : 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of primes of the range {@code [lo, hi)} in this store,
+     * 2 included.
+     *
+     * @param lo the lower bound of the range (included)
+     * @param hi the upper bound of the range (excluded)
+     * @return the number of marked numbers in the range
+     */
+    public long count(long lo, long hi) {
+        lo = Math.max(lo, from);
+        hi = Math.min(hi, to);
+        if (lo >= hi) {
+            return 0;
+        }
+        long count = lo <= 2 && 2 < hi ? 1 : 0;
+        // bits [first, last) hold the odd numbers of [lo, hi)
+        long first = (lo - origin) >>> 1;
+        long last = (hi - origin) >>> 1;
+        int firstWord = (int) (first >>> 6);
+        int lastWord = (int) (last >>> 6);
+        if (firstWord == lastWord) {
+            return count + Long.bitCount(words[firstWord] & (-1L << first) & ~(-1L << last));
+        }
+        count += Long.bitCount(words[firstWord] & (-1L << first));
+        for (int i = firstWord + 1; i < lastWord; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        if ((last & 63) != 0) {
+            count += Long.bitCount(words[lastWord] & ~(-1L << last));
+        }
+        return count;
+    }
+
+    /**
+     * Returns an iterator over the marked numbers, 2 included, in ascending
+     * order.
+     *
+     * @return an iterator over the primes of this store
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+
+            private long next = holdsTwo() ? 2 : OddBitSieve.this.next(from);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public long nextLong() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                long current = next;
+                next = OddBitSieve.this.next(current + 1);
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Returns the marked numbers, 2 included, in a new array sized with
+     * {@link #count()}.
+     *
+     * @return an array holding the primes of this store, in ascending order
+     */
+    @Override
+    public long[] toArray() {
+        long count = count();
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too many primes for an array: " + count);
+        }
+        long[] primes = new long[(int) count];
+        PrimitiveIterator.OfLong iterator = iterator();
+        for (int i = 0; i < primes.length; i++) {
+            primes[i] = iterator.nextLong();
+        }
+        return primes;
+    }
+
+}
@@ -0,0 +1,44 @@
+package primes;
+
+/**
+ * A test deciding whether a natural number is prime. The chunk processors of
+ * {@link PrimeComputer} take the test to apply, so that it can be picked for
+ * each call.
+ */
+@FunctionalInterface
+public interface PrimalityTest {
+
+    /**
+     * Trial division by the odd numbers up to the square root, see
+     * {@link PrimeComputerTester#isPrime}.
+     */
+    PrimalityTest TRIAL_DIVISION = PrimeComputerTester::isPrime;
+
+    /**
+     * Trial division by 2, 3, 5, 7 and the numbers coprime to 210, see
+     * {@link Wheel#isPrime}.
+     */
+    PrimalityTest WHEEL = Wheel::isPrime;
+
+    /**
+     * Trial division by the primes up to the square root, taken from the shared
+     * {@link SmallPrimeTable}.
+     */
+    PrimalityTest SMALL_PRIMES = number -> SmallPrimeTable.upTo(SegmentedSieve.sqrt(Math.max(0, number)))
+            .isPrime(number);
+
+    /**
+     * Deterministic Miller-Rabin test, see {@link MillerRabin#isPrime}.
+     */
+    PrimalityTest MILLER_RABIN = MillerRabin::isPrime;
+
+    /**
+     * Checks whether the specified natural number is prime.
+     *
+     * @param number the natural number to check
+     * @return {@code true} if the specified number is prime and {@code false}
+     * otherwise.
+     */
+    boolean isPrime(long number);
+
+}
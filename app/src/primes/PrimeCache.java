@@ -0,0 +1,255 @@
+package primes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Persistent cache of primes, backed by a file holding the sieve bitmap of the
+ * odd numbers up to some limit, in the layout of {@link OddBitSieve}. Requests
+ * below the cached limit are served straight from the file, mapped in memory;
+ * a request above it sieves the missing range only and appends it to the
+ * file. A process reopening the cache therefore gets its primes back without
+ * computing anything.
+ * <p>
+ * The file starts with a 16-byte header: a magic number, then the cached limit,
+ * which is always a multiple of {@link OddBitSieve#WORD_SPAN}; the words of the
+ * bitmap follow, in little-endian order. The limit is only updated once the
+ * words it covers are on disk, so that an interrupted extension is simply
+ * redone.
+ * <p>
+ * The methods of a cache are thread-safe. A {@link PrimeComputer} serves its
+ * requests from a cache with {@link PrimeComputer#primes(long, PrimeCache)},
+ * extending it on its own threads.
+ */
+public class PrimeCache implements AutoCloseable {
+
+    private static final long MAGIC = 0x5052494D45424954L; // "PRIMEBIT"
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Largest number of bytes mapped at once: a single mapping cannot exceed
+     * 2 GiB.
+     */
+    private static final long REGION_BYTES = 1L << 30;
+
+    /**
+     * Largest range sieved at once when extending the cache: the 2^21 words of
+     * a slice take 16 MiB on the heap, and as much in the direct buffer
+     * writing them.
+     */
+    private static final long EXTENSION_SPAN = 1L << 28;
+
+    private final FileChannel channel;
+    private long limit;
+    private List<LongBuffer> regions = new ArrayList<>();
+
+    /**
+     * Opens the cache stored in the specified file, creating an empty one if
+     * the file does not exist.
+     *
+     * @param file the file of the cache
+     * @throws IOException if the file cannot be opened or is not a cache
+     */
+    public PrimeCache(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                writeHeader(0);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (header.getLong(0) != MAGIC) {
+                    throw new IOException("not a prime cache: " + file);
+                }
+                limit = header.getLong(8);
+            }
+            map();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the limit up to which primes are cached.
+     *
+     * @return the cached limit (excluded)
+     */
+    public synchronized long limit() {
+        return limit;
+    }
+
+    /**
+     * Returns the primes up to the specified upper bound (excluded), extending
+     * the cache first if needed. The primes are read from the mapped file as
+     * they are iterated. An extension runs on threads allocated for the call,
+     * see {@link PrimeComputer#computePrimes(long, PrimeCache)}.
+     *
+     * @param max the upper bound of primes
+     * @return a {@link LongIterable} over the primes, in ascending order
+     * @throws IOException if the cache cannot be extended
+     */
+    public LongIterable primes(long max) throws IOException {
+        return PrimeComputer.computePrimes(max, this);
+    }
+
+    /**
+     * Returns the primes up to the specified upper bound (excluded), if they
+     * are cached.
+     *
+     * @param max the upper bound of primes
+     * @return a {@link LongIterable} over the primes, or {@code null} if
+     * {@code max} is above the cached limit
+     */
+    synchronized LongIterable cached(long max) {
+        return max <= limit ? new View(regions, max) : null;
+    }
+
+    /**
+     * Returns the primes up to the specified upper bound (excluded), extending
+     * the cache first if needed, the missing range being sieved by the
+     * specified scheduler.
+     *
+     * @param max the upper bound of primes
+     * @param scheduler the scheduler sieving the missing range
+     * @return a {@link LongIterable} over the primes, in ascending order
+     * @throws IOException if the cache cannot be extended
+     */
+    synchronized LongIterable primes(long max, ChunkScheduler scheduler) throws IOException {
+        if (max > limit) {
+            extend(max, scheduler);
+        }
+        return new View(regions, max);
+    }
+
+    /**
+     * Closes the file of the cache; the views already returned remain valid.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void extend(long max, ChunkScheduler scheduler) throws IOException {
+        long target = (max + OddBitSieve.WORD_SPAN - 1) / OddBitSieve.WORD_SPAN * OddBitSieve.WORD_SPAN;
+        // written straight from native memory, without a temporary copy
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) (EXTENSION_SPAN / OddBitSieve.WORD_SPAN * Long.BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        while (limit < target) {
+            long to = Math.min(target, limit + EXTENSION_SPAN);
+            OddBitSieve primes = SegmentedSieve.computePrimes(limit, to, scheduler, report -> {
+            });
+            long[] words = primes.words();
+            bytes.clear();
+            bytes.asLongBuffer().put(words);
+            bytes.limit(words.length * Long.BYTES);
+            long position = HEADER_BYTES + limit / OddBitSieve.WORD_SPAN * Long.BYTES;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            channel.force(false);
+            writeHeader(to);
+        }
+        map();
+    }
+
+    private void writeHeader(long newLimit) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putLong(newLimit).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+        limit = newLimit;
+    }
+
+    private void map() throws IOException {
+        List<LongBuffer> mapped = new ArrayList<>();
+        long bytes = limit / OddBitSieve.WORD_SPAN * Long.BYTES;
+        for (long offset = 0; offset < bytes; offset += REGION_BYTES) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + offset, Math.min(REGION_BYTES, bytes - offset));
+            mapped.add(region.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+        }
+        regions = mapped;
+    }
+
+    /**
+     * The primes up to some bound, read from the mapped regions of the file.
+     */
+    private static class View implements LongIterable {
+
+        private static final int WORDS_PER_REGION = (int) (REGION_BYTES / Long.BYTES);
+
+        private final List<LongBuffer> regions;
+        private final long max;
+
+        View(List<LongBuffer> regions, long max) {
+            this.regions = regions;
+            this.max = max;
+        }
+
+        private long word(long index) {
+            return regions.get((int) (index / WORDS_PER_REGION)).get((int) (index % WORDS_PER_REGION));
+        }
+
+        /**
+         * Returns the smallest prime greater than or equal to the specified odd
+         * number, or -1 if there is none below the bound.
+         */
+        private long next(long number) {
+            if (number >= max) {
+                return -1;
+            }
+            long bit = number >>> 1;
+            long index = bit >>> 6;
+            long lastIndex = (max - 1) / OddBitSieve.WORD_SPAN;
+            long word = word(index) & (-1L << bit);
+            while (word == 0) {
+                if (++index > lastIndex) {
+                    return -1;
+                }
+                word = word(index);
+            }
+            long prime = 2 * (index * Long.SIZE + Long.numberOfTrailingZeros(word)) + 1;
+            return prime < max ? prime : -1;
+        }
+
+        @Override
+        public PrimitiveIterator.OfLong iterator() {
+            return new PrimitiveIterator.OfLong() {
+
+                private long next = max > 2 ? 2 : -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    long current = next;
+                    next = View.this.next(current == 2 ? 3 : current + 2);
+                    return current;
+                }
+            };
+        }
+    }
+
+}
@@ -1,22 +1,134 @@
 package primes;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.io.IOException;
+import java.util.PrimitiveIterator;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * Computes prime numbers efficiently by leveraging all the available CPUs. The
  * main method of this class is {@link #computePrimes}.
  * <p>
+ * The static methods create their threads on each call and release them before
+ * returning. Callers issuing many queries may instead create a
+ * {@code PrimeComputer} instance, which owns a pool reused by all its calls,
+ * and close it once done:
+ * <pre>
+ * try (PrimeComputer computer = new PrimeComputer(PoolKind.FORK_JOIN, 8)) {
+ *     LongIterable primes = computer.primes(max, Engine.SEGMENTED_SIEVE);
+ * }
+ * </pre>
+ * <p>
  * <i>Note to implementors:</i> You can add to this class any field, method or
  * nested class you need to implement {@code computePrimes}.
  *
  * @author Jean-Michel Busca
  */
-public class PrimeComputer {
+public class PrimeComputer implements AutoCloseable {
+
+    /**
+     * Number of chunks per thread handed out by the {@link ChunkScheduler}:
+     * small chunks keep the threads busy until the very end of the run.
+     */
+    private static final int CHUNKS_PER_THREAD = 64;
+
+    /**
+     * Number of segments per thread the streaming methods hold at most, sieved
+     * or tested but not yet consumed.
+     */
+    private static final int STREAM_SEGMENTS_PER_THREAD = 2;
+
+    /**
+     * The first primes, below the ranks where the bounds of
+     * {@link PrimeCounting} apply.
+     */
+    private static final long[] FIRST_PRIMES = {2, 3, 5, 7, 11};
+
+    /**
+     * System property overriding the number of threads used by the static
+     * methods of this class, which defaults to the number of available
+     * processors.
+     */
+    public static final String THREADS_PROPERTY = "primes.threads";
+
+    /**
+     * System property selecting the {@link PoolKind} used by the static
+     * methods of this class, which defaults to {@link PoolKind#FIXED}.
+     */
+    public static final String POOL_PROPERTY = "primes.pool";
+
+    private final ExecutorService pool;
+    private final int threads;
+    private final ChunkScheduler scheduler;
+    private final Semaphore permits;
+
+    /**
+     * The kinds of pool a {@link PrimeComputer} instance may own.
+     */
+    public enum PoolKind {
+
+        /**
+         * A fixed pool of platform threads.
+         */
+        FIXED,
+
+        /**
+         * A work-stealing {@link ForkJoinPool}.
+         */
+        FORK_JOIN,
+
+        /**
+         * One virtual thread per chunk, a semaphore capping the number of
+         * chunks processed at once to the number of threads of the computer.
+         * Concurrent calls on the same computer share the permits, so that
+         * they never overload the machine; the streaming methods, which run
+         * one virtual thread per worker, hold a permit while computing each
+         * segment.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * The algorithms available to {@link #computePrimes(long, Engine)}.
+     */
+    public enum Engine {
+
+        /**
+         * Checks every candidate with {@link PrimeComputerTester#isPrime}; this is
+         * the engine used by {@link #computePrimes(long)}.
+         */
+        TRIAL_DIVISION,
+
+        /**
+         * Checks every candidate with {@link Wheel#isPrime}, which divides by
+         * the numbers coprime to 210 only.
+         */
+        WHEEL,
+
+        /**
+         * Checks every candidate by trial division by primes only, taken from a
+         * {@link SmallPrimeTable} built once per call and shared by all the
+         * threads.
+         */
+        SMALL_PRIMES,
+
+        /**
+         * Checks every candidate with {@link MillerRabin#isPrime}.
+         */
+        MILLER_RABIN,
+
+        /**
+         * Sieves cache-sized segments in parallel, see {@link SegmentedSieve}.
+         */
+        SEGMENTED_SIEVE,
+
+        /**
+         * Sieves the segments on demand, as the primes are iterated, see
+         * {@link #computePrimesLazily(long, int)}.
+         */
+        LAZY_SIEVE
+    }
 
     /**
      * Efficiently computes prime numbers up to the specified upper bound
@@ -37,121 +149,783 @@ public class PrimeComputer {
      *
      * @param max the upper bound of primes
      * @return an {@code Iterable} object over the list of primes;
-     * {@code Iterator.next()} returns the primes in ascending order.
+     * {@code Iterator.next()} returns the primes in ascending order. The object
+     * is a {@link LongIterable}, which also iterates without boxing.
      */
-    public static Iterable<Long> computePrimes(long max) {
+    public static LongIterable computePrimes(long max) {
+        return computePrimes(max, Engine.TRIAL_DIVISION);
+    }
 
-        List<Long> primes = new ArrayList<>();
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine. Like {@link #computePrimes(long)}, the method
+     * releases all the threads it allocated before returning.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public static LongIterable computePrimes(long max, Engine engine) {
+        return computePrimes(max, engine, report -> {
+        });
+    }
+
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, and publishes the report of the run to the
+     * specified consumer. The lazy engine computes nothing up front and
+     * publishes no report.
+     * <p>
+     * Above {@link OddBitSieve#MAX_SPAN}, the primes no longer fit in memory:
+     * the segmented sieve then streams them like the lazy engine, while the
+     * engines based on a primality test reject the upper bound.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @param reports the consumer of the run report
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public static LongIterable computePrimes(long max, Engine engine, Consumer<RunReport> reports) {
+        if (engine == Engine.LAZY_SIEVE || max > OddBitSieve.MAX_SPAN && engine == Engine.SEGMENTED_SIEVE) {
+            // the iterators allocate their own threads
+            return computePrimesLazily(max, threadCount());
+        }
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primes(max, engine, reports);
+        }
+    }
+
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), checking
+     * every candidate with the specified primality test. Like
+     * {@link #computePrimes(long)}, the method releases all the threads it
+     * allocated before returning.
+     *
+     * @param max the upper bound of primes
+     * @param test the primality test applied to the candidates
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public static LongIterable computePrimes(long max, PrimalityTest test) {
+        return computePrimes(max, test, report -> {
+        });
+    }
+
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), checking
+     * every candidate with the specified primality test, and publishes the
+     * report of the run to the specified consumer. See
+     * {@link #primes(long, PrimalityTest, Consumer)}.
+     *
+     * @param max the upper bound of primes
+     * @param test the primality test applied to the candidates
+     * @param reports the consumer of the run report
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public static LongIterable computePrimes(long max, PrimalityTest test, Consumer<RunReport> reports) {
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primes(max, test, reports);
+        }
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)} with the segmented
+     * sieve. See {@link #primes(long, long)}; like
+     * {@link #computePrimes(long)}, the method releases all the threads it
+     * allocated before returning.
+     * <p>
+     * Ranges wider than {@link OddBitSieve#MAX_SPAN} are streamed segment by
+     * segment, like {@link #computePrimesLazily(long, int)}.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return a {@link LongIterable} over the primes of the range, in ascending
+     * order
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public static LongIterable computePrimes(long lo, long hi) {
+        if (lo >= 0 && hi - lo > OddBitSieve.MAX_SPAN) {
+            return new LazyPrimes(lo, hi, threadCount());
+        }
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primes(lo, hi);
+        }
+    }
 
-        int multiplier = 2;
+    /**
+     * Returns the primes up to the specified upper bound (excluded) from the
+     * specified cache. See {@link #primes(long, PrimeCache)}; the threads
+     * extending the cache, if needed, are released before returning.
+     *
+     * @param max the upper bound of primes
+     * @param cache the cache holding the primes
+     * @return a {@link LongIterable} over the primes, in ascending order
+     * @throws IOException if the cache cannot be extended
+     */
+    public static LongIterable computePrimes(long max, PrimeCache cache) throws IOException {
+        LongIterable primes = cache.cached(max);
+        if (primes != null) {
+            // no thread needed
+            return primes;
+        }
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primes(max, cache);
+        }
+    }
 
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, into a compact list. See
+     * {@link #compactPrimes(long, Engine)}; like {@link #computePrimes(long)},
+     * the method releases all the threads it allocated before returning.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @return a {@link GapPrimes} list of the primes, in ascending order
+     */
+    public static GapPrimes computePrimesCompact(long max, Engine engine) {
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.compactPrimes(max, engine);
+        }
+    }
 
-        int availableProcessors = Runtime.getRuntime().availableProcessors();
+    /**
+     * Returns the number of primes up to the specified upper bound (excluded),
+     * without enumerating them. See {@link #primeCount(long)}; like
+     * {@link #computePrimes(long)}, the method releases all the threads it
+     * allocated before returning.
+     *
+     * @param max the upper bound of primes
+     * @return the number of primes less than {@code max}
+     */
+    public static long countPrimes(long max) {
+        if (PrimeCounting.fits(max)) {
+            // single-threaded: no pool needed
+            return PrimeCounting.countPrimes(max);
+        }
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primeCount(max);
+        }
+    }
 
-        //splitting the load
-        //long chunkSize = (long) Math.ceil((double) max / availableProcessors / multiplier); //each chunk size (rounded up)
-        List<Integer> chunkIndexes = getIdx((int) max, availableProcessors * multiplier);
+    /**
+     * Returns the number of primes of the range {@code [lo, hi)}, counted by a
+     * parallel sieve that never holds more than one segment per thread. See
+     * {@link #primeCount(long, long)}; like {@link #computePrimes(long)}, the
+     * method releases all the threads it allocated before returning.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return the number of primes of the range
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public static long countPrimes(long lo, long hi) {
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.primeCount(lo, hi);
+        }
+    }
 
+    /**
+     * Returns the {@code k}-th prime, 2 being the first one. See
+     * {@link #prime(long)}; like {@link #computePrimes(long)}, the method
+     * releases all the threads it allocated before returning.
+     *
+     * @param k the rank of the prime, starting from 1
+     * @return the {@code k}-th prime
+     */
+    public static long nthPrime(long k) {
+        if (0 < k && k <= FIRST_PRIMES.length) {
+            return FIRST_PRIMES[(int) k - 1];
+        }
+        try (PrimeComputer computer = new PrimeComputer()) {
+            return computer.prime(k);
+        }
+    }
 
-        List<Long> numbers = LongStream.range(1, max - 1)
-                .boxed()
-                .collect(Collectors.toList());
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, and passes them to the specified action as they
+     * are found, see {@link #forEachPrime(long, long, Engine, LongConsumer)}.
+     * Like {@link #computePrimes(long)}, the method releases all the threads
+     * it allocated before returning.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @param action the action applied to each prime, in ascending order
+     */
+    public static void forEachPrime(long max, Engine engine, LongConsumer action) {
+        try (PrimeComputer computer = new PrimeComputer()) {
+            computer.forEachPrime(0, Math.max(0, max), engine, action);
+        }
+    }
 
+    /**
+     * Returns the primes up to the specified upper bound (excluded) without
+     * computing them: each iterator sieves the segments as the primes are
+     * consumed, with {@code readAhead} threads sieving the next segments in
+     * parallel. Stopping early therefore saves the remaining work.
+     * <p>
+     * No thread is allocated until an iterator is created; an iterator releases
+     * its threads once exhausted or closed, see {@link LazyPrimes}.
+     *
+     * @param max the upper bound of primes
+     * @param readAhead the number of segments sieved ahead of the consumer
+     * @return a {@link LazyPrimes} object over the primes, in ascending order
+     */
+    public static LazyPrimes computePrimesLazily(long max, int readAhead) {
+        return new LazyPrimes(max, readAhead);
+    }
 
-        Collection<List<Long>> chunks = new ArrayList<List<Long>>();
+    /**
+     * Returns the number of threads used by the static methods of this class:
+     * the value of the {@link #THREADS_PROPERTY} system property if set, and
+     * the number of available processors otherwise.
+     *
+     * @return the number of threads, at least 1
+     */
+    public static int threadCount() {
+        Integer threads = Integer.getInteger(THREADS_PROPERTY);
+        return threads != null && threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
 
-        int last = 0;
-        for (int i = 1; i < chunkIndexes.size(); i++) {
-            chunks.add(numbers.subList(chunkIndexes.get(i - 1), chunkIndexes.get(i)));
+    //
+    // INSTANCE API
+    //
 
+    /**
+     * Creates a computer owning a pool of {@link #threadCount()} threads, of
+     * the kind selected by the {@link #POOL_PROPERTY} system property.
+     */
+    public PrimeComputer() {
+        this(PoolKind.valueOf(System.getProperty(POOL_PROPERTY, PoolKind.FIXED.name())), threadCount());
+    }
 
+    /**
+     * Creates a computer owning a pool of the specified kind and size. The
+     * pool is reused by every call until the computer is closed.
+     *
+     * @param kind the kind of pool
+     * @param threads the number of threads of the pool
+     */
+    public PrimeComputer(PoolKind kind, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
         }
+        this.threads = threads;
+        switch (kind) {
+            case FIXED:
+                this.pool = Executors.newFixedThreadPool(threads);
+                this.permits = null;
+                this.scheduler = new ChunkScheduler(pool, threads);
+                break;
+            case FORK_JOIN:
+                this.pool = new ForkJoinPool(threads);
+                this.permits = null;
+                this.scheduler = new ChunkScheduler(pool, threads);
+                break;
+            case VIRTUAL:
+                this.pool = Executors.newVirtualThreadPerTaskExecutor();
+                this.permits = new Semaphore(threads);
+                this.scheduler = new ChunkScheduler(pool, threads, permits);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown pool kind: " + kind);
+        }
+    }
 
+    /**
+     * Returns the number of threads of this computer.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
 
-        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded) with the
+     * default engine, see {@link #computePrimes(long)}.
+     *
+     * @param max the upper bound of primes
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public LongIterable primes(long max) {
+        return primes(max, Engine.TRIAL_DIVISION);
+    }
 
-        List<Future<List<Long>>> list = new ArrayList<Future<List<Long>>>();
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, see {@link #computePrimes(long, Engine)}.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public LongIterable primes(long max, Engine engine) {
+        return primes(max, engine, report -> {
+        });
+    }
 
-        for (int i = 0; i < availableProcessors * multiplier; i += 1) {
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, and publishes the report of the run to the
+     * specified consumer, see {@link #computePrimes(long, Engine, Consumer)}.
+     * The lazy engine sieves on the pool of this computer, which must remain
+     * open while the primes are iterated.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @param reports the consumer of the run report
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public LongIterable primes(long max, Engine engine, Consumer<RunReport> reports) {
+        if (max > OddBitSieve.MAX_SPAN && engine == Engine.SEGMENTED_SIEVE) {
+            // too many primes to hold in memory: stream them segment by segment
+            engine = Engine.LAZY_SIEVE;
+        }
+        switch (engine) {
+            case SEGMENTED_SIEVE:
+                return SegmentedSieve.computePrimes(0, Math.max(0, max), scheduler, reports);
+            case LAZY_SIEVE:
+                return new LazyPrimes(0, max, threads, pool, permits);
+            default:
+                return primes(max, test(engine, max), reports);
+        }
+    }
 
-            Future<List<Long>> result = pool.submit(new MyChunkProcessor((List<Long>) chunks.toArray()[i], i));
-            list.add(result);
+    /**
+     * Returns the primality test applied by the specified engine to the
+     * candidates below the specified upper bound.
+     *
+     * @param engine the engine
+     * @param max the upper bound of the candidates
+     * @return the primality test, or {@code null} for the sieve engines
+     */
+    private static PrimalityTest test(Engine engine, long max) {
+        switch (engine) {
+            case TRIAL_DIVISION:
+                return PrimalityTest.TRIAL_DIVISION;
+            case WHEEL:
+                return PrimalityTest.WHEEL;
+            case SMALL_PRIMES:
+                return SmallPrimeTable.upTo(SegmentedSieve.sqrt(Math.max(0, max - 1)));
+            case MILLER_RABIN:
+                return PrimalityTest.MILLER_RABIN;
+            case SEGMENTED_SIEVE:
+            case LAZY_SIEVE:
+                return null;
+            default:
+                throw new IllegalArgumentException("unknown engine: " + engine);
         }
+    }
 
-        for (Future<List<Long>> fut : list) {
-            try {
-                primes.addAll(fut.get());
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), checking
+     * every candidate with the specified primality test, and publishes the
+     * report of the run to the specified consumer.
+     * <p>
+     * The candidates are handed out in small chunks by a {@link ChunkScheduler},
+     * so that the load balances itself whatever the cost of each chunk; the
+     * report gives the idle time of each thread.
+     *
+     * @param max the upper bound of primes
+     * @param test the primality test applied to the candidates
+     * @param reports the consumer of the run report
+     * @return a {@link LongIterable} over the list of primes, in ascending
+     * order
+     */
+    public LongIterable primes(long max, PrimalityTest test, Consumer<RunReport> reports) {
+
+        if (max > OddBitSieve.MAX_SPAN) {
+            throw new IllegalArgumentException("max is too large to hold the primes in memory: " + max);
         }
 
-        pool.shutdown();
+        // the store holds every odd candidate, the processors clear the composites
+        OddBitSieve primes = new OddBitSieve(max);
+
+        // chunks are aligned on the words of the store, so that no two
+        // processors write to the same word
+        long chunkSize = (max + (long) threads * CHUNKS_PER_THREAD - 1)
+                / ((long) threads * CHUNKS_PER_THREAD);
+        chunkSize = Math.max(1, (chunkSize + OddBitSieve.WORD_SPAN - 1) / OddBitSieve.WORD_SPAN)
+                * OddBitSieve.WORD_SPAN;
+
+        RunReport report = scheduler.run(0, max, chunkSize,
+                (index, from, to) -> {
+                    MyChunkProcessor processor = new MyChunkProcessor(primes, from, to, index, test);
+                    long count = processor.call();
+                    return new RunReport.ChunkStats(index, from, to, processor.getCandidates(), count);
+                });
+        reports.accept(report);
         return primes;
     }
 
-    public static class MyChunkProcessor implements Callable<List<Long>> {
-        List<Long> chunk;
-        List<Long> primes;
-        int i;
-
-        public MyChunkProcessor(List<Long> chunk, int i) {
-            this.chunk = chunk;
-            this.primes = new ArrayList<>();
-            this.i = i;
+    /**
+     * Computes the primes of the range {@code [lo, hi)} with the segmented
+     * sieve. Only the base primes up to the square root of {@code hi} are
+     * computed, so that the cost scales with the width of the range, not with
+     * {@code hi}; the sub-segments of the range are sieved in parallel.
+     * Ranges wider than {@link OddBitSieve#MAX_SPAN} are streamed on the pool
+     * of this computer.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return a {@link LongIterable} over the primes of the range, in ascending
+     * order
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public LongIterable primes(long lo, long hi) {
+        if (lo < 0 || hi < lo) {
+            throw new IllegalArgumentException("invalid range: [" + lo + ", " + hi + ")");
         }
+        SegmentedSieve.checkBound(hi);
+        if (hi - lo > OddBitSieve.MAX_SPAN) {
+            return new LazyPrimes(lo, hi, threads, pool, permits);
+        }
+        return SegmentedSieve.computePrimes(lo, hi, scheduler, report -> {
+        });
+    }
 
-        public List<Long> call() {
-            long start = System.currentTimeMillis();
-            chunk.forEach((candidate) -> {
-                if (PrimeComputerTester.isPrime(candidate)) {
-                    primes.add(candidate);
-                }
-            });
+    /**
+     * Returns the primes up to the specified upper bound (excluded) from the
+     * specified cache, see {@link PrimeCache}. Below the cached limit, nothing
+     * is computed; above it, the missing range only is sieved on the pool of
+     * this computer and appended to the cache.
+     *
+     * @param max the upper bound of primes
+     * @param cache the cache holding the primes
+     * @return a {@link LongIterable} over the primes, read from the file of the
+     * cache as they are iterated
+     * @throws IOException if the cache cannot be extended
+     */
+    public LongIterable primes(long max, PrimeCache cache) throws IOException {
+        return cache.primes(max, scheduler);
+    }
 
-            long finish = System.currentTimeMillis();
-            long timeElapsed = finish - start;
+    /**
+     * Computes prime numbers up to the specified upper bound (excluded), using
+     * the specified engine, into a compact list of about one byte per prime,
+     * see {@link GapPrimes}. The primes are streamed into the list by
+     * {@link #forEachPrime(long, long, Engine, LongConsumer)}, so that no
+     * other representation of the whole range is ever held in memory.
+     *
+     * @param max the upper bound of primes
+     * @param engine the engine computing the primes
+     * @return a {@link GapPrimes} list of the primes, in ascending order
+     */
+    public GapPrimes compactPrimes(long max, Engine engine) {
+        GapPrimes.Builder builder = new GapPrimes.Builder();
+        forEachPrime(0, Math.max(0, max), engine, builder::add);
+        return builder.build();
+    }
 
-            return primes;
+    /**
+     * Returns the number of primes up to the specified upper bound (excluded),
+     * without enumerating them.
+     * <p>
+     * The primes are counted with the method of Lucy_Hedgehog, see
+     * {@link PrimeCounting}, in about {@code max^(3/4)} operations on a single
+     * thread. When its tables of {@code 16 * sqrt(max)} bytes would not fit in
+     * the heap, the count falls back to the parallel sieve count of
+     * {@link #primeCount(long, long)}, which only needs the base primes and one
+     * segment per thread, but takes time linear in {@code max}.
+     *
+     * @param max the upper bound of primes
+     * @return the number of primes less than {@code max}
+     */
+    public long primeCount(long max) {
+        if (PrimeCounting.fits(max)) {
+            return PrimeCounting.countPrimes(max);
         }
+        return primeCount(0, max);
     }
 
     /**
-     * Function to compute chunk indexes so that they all have the same time complexity
-     * @param n max number
-     * @param cores nb of threads
-     * @return chunks
+     * Returns the number of primes of the range {@code [lo, hi)}: the segments
+     * of the range are sieved in parallel on the pool of this computer, then
+     * counted and dropped, so that the primes are never held in memory.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return the number of primes of the range
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
      */
-    public static ArrayList<Integer> getIdx(int n, int cores) {
-        long sum_per_chunk = sumArr(n);
-        sum_per_chunk = sum_per_chunk / cores;
+    public long primeCount(long lo, long hi) {
+        return SegmentedSieve.countPrimes(lo, hi, scheduler, report -> {
+        });
+    }
 
-        Long sum = (long) 0;
-        ArrayList<Integer> res = new ArrayList<>();
-        res.add(0);
-        for (int i = 0; i < n; i++) {
-            sum += complexity(i);
-            if (sum > sum_per_chunk) {
-                res.add(i);
-                sum = (long) 0;
+    /**
+     * Returns the {@code k}-th prime, 2 being the first one.
+     * <p>
+     * The prime is bracketed by the bounds of Rosser and Dusart, see
+     * {@link PrimeCounting#nthPrimeLowerBound(long)}, whose window is a small
+     * fraction of the prime. The primes below the window are counted with
+     * {@link #primeCount(long)}, without being enumerated; the window is then
+     * sieved in parallel, the per-segment counts of the run report locating
+     * the segment of the prime, which is the only one walked.
+     *
+     * @param k the rank of the prime, starting from 1
+     * @return the {@code k}-th prime
+     * @throws IllegalArgumentException if {@code k} is not positive, or if the
+     * prime may not fit in a {@code long}
+     */
+    public long prime(long k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        if (k <= FIRST_PRIMES.length) {
+            return FIRST_PRIMES[(int) k - 1];
+        }
+        long lo = PrimeCounting.nthPrimeLowerBound(k);
+        long hi = PrimeCounting.nthPrimeUpperBound(k) + 1;
+        long rank = k - primeCount(lo);
+
+        RunReport[] report = new RunReport[1];
+        OddBitSieve window = SegmentedSieve.computePrimes(lo, hi, scheduler, run -> report[0] = run);
+        for (RunReport.ChunkStats chunk : report[0].getChunks()) {
+            if (rank > chunk.getPrimes()) {
+                rank -= chunk.getPrimes();
+                continue;
+            }
+            // the window starts above 2: its primes are the marked odd numbers
+            long prime = window.next(chunk.getFrom());
+            while (--rank > 0) {
+                prime = window.next(prime + 2);
+            }
+            return prime;
+        }
+        throw new IllegalStateException("prime " + k + " is not in [" + lo + ", " + hi + ")");
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)}, using the specified
+     * engine, and passes them to the specified action as they are found, see
+     * {@link #forEachPrime(long, long, Engine, LongConsumer, Consumer)}.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param engine the engine computing the primes
+     * @param action the action applied to each prime, in ascending order
+     */
+    public void forEachPrime(long lo, long hi, Engine engine, LongConsumer action) {
+        forEachPrime(lo, hi, engine, action, report -> {
+        });
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)}, using the specified
+     * engine, passes them to the specified action as they are found, and
+     * publishes the report of the run to the specified consumer.
+     * <p>
+     * The threads of this computer sieve or test the range segment by segment,
+     * each segment in a store of its own, and put the finished segments in a
+     * {@link ReorderBuffer}; the calling thread takes them back in order and
+     * applies the action to their primes while the next segments are being
+     * computed. The first primes are thus consumed as soon as the first
+     * segment is done, and the memory used depends on the number of segments
+     * in flight, not on the width of the range. The action runs on the calling
+     * thread only; if it throws, the computation stops and the exception is
+     * rethrown.
+     * <p>
+     * The time of a chunk in the report includes the time its thread waited
+     * for the consumer to make room in the buffer.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param engine the engine computing the primes
+     * @param action the action applied to each prime, in ascending order
+     * @param reports the consumer of the run report
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND} with a sieve engine
+     */
+    public void forEachPrime(long lo, long hi, Engine engine, LongConsumer action,
+                             Consumer<RunReport> reports) {
+
+        if (lo < 0 || hi < lo) {
+            throw new IllegalArgumentException("invalid range: [" + lo + ", " + hi + ")");
+        }
+        PrimalityTest test = test(engine, hi);
+        if (test == null) {
+            SegmentedSieve.checkBound(hi);
+        }
+        int[] basePrimes = test == null ? SegmentedSieve.basePrimes(SegmentedSieve.sqrt(Math.max(0, hi - 1))) : null;
+        long segments = (hi - lo) / SegmentedSieve.SEGMENT_SIZE
+                + ((hi - lo) % SegmentedSieve.SEGMENT_SIZE != 0 ? 1 : 0);
+        ReorderBuffer<OddBitSieve> buffer = new ReorderBuffer<>(threads * STREAM_SEGMENTS_PER_THREAD);
+
+        // the buffer relies on the segments being claimed in ascending order,
+        // which only the claiming workers guarantee, whatever the pool
+        ChunkScheduler producers = new ChunkScheduler(pool, threads);
+        ChunkScheduler.Run run = producers.submit(lo, hi, SegmentedSieve.SEGMENT_SIZE, (index, from, to) -> {
+            try {
+                OddBitSieve segment = new OddBitSieve(from, to);
+                long candidates;
+                if (permits != null) {
+                    // share the permits of the computer, but not while waiting for the consumer
+                    permits.acquire();
+                }
+                try {
+                    if (test == null) {
+                        SegmentedSieve.sieve(segment, from, to, basePrimes);
+                        candidates = (to - from + (from & 1)) / 2;
+                    } else {
+                        MyChunkProcessor processor = new MyChunkProcessor(segment, from, to, index, test);
+                        processor.call();
+                        candidates = processor.getCandidates();
+                    }
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+                long count = segment.count();
+                buffer.put(index, segment);
+                return new RunReport.ChunkStats(index, from, to, candidates, count);
+            } catch (Exception | Error e) {
+                // release the consumer and the other producers
+                buffer.fail(e);
+                throw e;
+            }
+        });
+
+        // the calling thread consumes while the workers produce
+        try {
+            for (long i = 0; i < segments; i++) {
+                PrimitiveIterator.OfLong primes = buffer.take().iterator();
+                while (primes.hasNext()) {
+                    action.accept(primes.nextLong());
+                }
             }
+        } catch (InterruptedException e) {
+            stop(run, buffer, e);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while streaming primes", e);
+        } catch (RuntimeException | Error e) {
+            stop(run, buffer, e);
+            throw e;
         }
-        res.add(n - 2);
-        return res;
+        reports.accept(run.await());
     }
 
-    public static long sumArr(int n) {
-        long res = 0;
-        for (int i = 0; i < n; i++) {
-            res += complexity(i);
+    /**
+     * Stops a streaming run that failed on the consumer side, and waits for
+     * the chunks in progress, so that no task of the run outlives the call.
+     * The failures of the producers, caused by this one, are dropped.
+     */
+    private static void stop(ChunkScheduler.Run run, ReorderBuffer<?> buffer, Throwable cause) {
+        run.cancel();
+        buffer.fail(cause);
+        try {
+            run.await();
+        } catch (IllegalStateException e) {
+            // a producer released by the failed buffer
         }
-        return res;
     }
 
-    public static long complexity(int i) {
-        // We assumed the time complexity of the trial division was close to n.
-        return i;
+    /**
+     * Shuts the pool of this computer down and waits for its threads to
+     * terminate.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-}
+    /**
+     * Checks the candidates of the range {@code [from, to)} of the store and
+     * clears the ones that are not prime; returns the number of primes found.
+     * The candidates are generated by the {@link Wheel}: the multiples of 2, 3,
+     * 5 and 7 are cleared at once, without calling the primality test.
+     * Once called, the processor also gives the number of candidates it
+     * checked and the time it took.
+     */
+    public static class MyChunkProcessor implements Callable<Long> {
+        OddBitSieve primes;
+        long from;
+        long to;
+        long i;
+        PrimalityTest test;
+        long candidates;
+        long timeElapsed;
+
+        public MyChunkProcessor(OddBitSieve primes, long from, long to, long i) {
+            this(primes, from, to, i, PrimalityTest.TRIAL_DIVISION);
+        }
 
+        public MyChunkProcessor(OddBitSieve primes, long from, long to, long i, PrimalityTest test) {
+            this.primes = primes;
+            this.from = from;
+            this.to = to;
+            this.i = i;
+            this.test = test;
+        }
+
+        public Long call() {
+            long start = System.nanoTime();
+            long count = 0;
+
+            // 2, 3, 5 and 7 are the only primes off the wheel; the store holds
+            // 2 implicitly, but it counts like the sieve engines count it
+            SegmentedSieve.sieve(primes, from, to, Wheel.PRIMES);
+            for (int prime : Wheel.PRIMES) {
+                if (from <= prime && prime < to) {
+                    count++;
+                }
+            }
+
+            long candidate = Wheel.next(Math.max(from, 2));
+            int spoke = Wheel.spoke(candidate);
+            // stop if the candidate wraps around past Long.MAX_VALUE
+            while (candidate < to && candidate >= from) {
+                candidates++;
+                if (test.isPrime(candidate)) {
+                    count++;
+                } else {
+                    primes.clear(candidate);
+                }
+                candidate += Wheel.gap(spoke);
+                spoke = spoke + 1 == Wheel.RESIDUES.length ? 0 : spoke + 1;
+            }
+
+            long finish = System.nanoTime();
+            timeElapsed = finish - start;
+
+            return count;
+        }
+
+        /**
+         * Returns the number of candidates checked by the last call.
+         *
+         * @return the number of candidates
+         */
+        public long getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * Returns the time taken by the last call.
+         *
+         * @return the elapsed time, in nanoseconds
+         */
+        public long getTimeElapsed() {
+            return timeElapsed;
+        }
+    }
+
+}
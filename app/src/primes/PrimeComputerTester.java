@@ -1,42 +1,129 @@
 package primes;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.PrimitiveIterator;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 /**
  * Tests the {@link PrimeComputer#computePrimes} method for correctness and
- * performance.
+ * performance: the static entry point, then every {@link PrimeEngine}
+ * registered in {@link PrimeEngines}, are compared to the sequential
+ * reference, and summarized side by side.
  *
  * @author Jean-Michel Busca
  */
 public class PrimeComputerTester {
 
+    /**
+     * System property selecting how the results are verified: {@code full},
+     * the default, keeps both lists of primes and diffs them; {@code checksum}
+     * only keeps the count and a hash of the primes of each segment of the
+     * range, and diffs the primes of the segments that differ, those of the
+     * reference being found again with {@link #isPrime}.
+     */
+    public static final String VERIFY_PROPERTY = "primes.verify";
+
+    /**
+     * Number of primes above which the lists are diffed in parallel, chunk by
+     * chunk.
+     */
+    private static final int PARALLEL_DIFF_THRESHOLD = 1 << 20;
+
+    /**
+     * Number of chunks per processor of a parallel diff.
+     */
+    private static final int DIFF_CHUNKS_PER_PROCESSOR = 4;
+
+    /**
+     * Base-2 logarithm of the minimum width of a checksum segment; wide ranges
+     * use wider segments, so that there are at most about a million of them.
+     */
+    private static final int CHECKSUM_SEGMENT_BITS = 20;
+
+    /**
+     * System property enabling the sweep mode: rather than comparing
+     * {@code computePrimes} to the reference, the tester measures how the
+     * engine scales with the number of threads, see {@link #sweep}.
+     */
+    public static final String SWEEP_PROPERTY = "primes.sweep";
+
+    /**
+     * System property selecting the engines tested, as a comma-separated list
+     * of {@link PrimeEngine} names; all the registered engines are tested by
+     * default.
+     */
+    public static final String ENGINE_PROPERTY = "primes.engine";
+
+    /**
+     * Number of upper bounds of the sweep mode, each ten times smaller than
+     * the next, down from {@code max}.
+     */
+    private static final int SWEEP_DECADES = 3;
+
+    /**
+     * Header of the columns returned by {@link #compareResults}.
+     */
+    private static final String SUMMARY_HEADER = String.format("%12s %8s %9s %6s %6s %5s %14s %4s %7s %15s",
+            "median (ms)", "speedup", "precision", "recall", "sorted", "grade",
+            "allocated (MB)", "GCs", "GC (ms)", "pool peaks (MB)");
+
     /**
      * Main method of the test program.
      *
-     * @param args the command line arguments: [max [#iteration]]
+     * @param args the command line arguments: [max [#iteration [#warmup]]]
      */
     public static void main(String[] args) {
 
         // get test arguments
         long[] arguments = getArguments(args);
 
+        if (Boolean.getBoolean(SWEEP_PROPERTY)) {
+            sweep(arguments);
+            return;
+        }
 
-      // test getPrimes (reference test - sequential)
+        // test getPrimes (reference test - sequential)
         TestResult reference
-                = performTest("getPrimes", arguments, PrimeComputerTester::getPrimes);
-
-
-        // test computePrimes (actual test - parallel)
-        TestResult computation
-                = performTest("computePrimes", arguments, PrimeComputer::computePrimes);
+                = performTest("getPrimes", arguments, PrimeComputerTester::getPrimes, false);
+
+        // test the required entry point, which creates its threads on each call
+        List<String> summary = new ArrayList<>();
+        TestResult entryPoint
+                = performTest("computePrimes", arguments, max -> PrimeComputer.computePrimes(max), true);
+        summary.add(String.format("%-16s ", "computePrimes") + compareResults(reference, entryPoint));
+
+        // test each engine (actual tests - parallel); the computer is created
+        // before the warmup, and stays open until lazy results are compared
+        for (PrimeEngine engine : PrimeEngines.select(System.getProperty(ENGINE_PROPERTY))) {
+            try (PrimeComputer computer = new PrimeComputer()) {
+                TestResult computation
+                        = performTest(engine.getName(), arguments, max -> engine.primes(computer, max), true);
+
+                // compare results
+                summary.add(String.format("%-16s ", engine.getName())
+                        + compareResults(reference, computation));
+            }
+        }
 
-        // compare results
-        compareResults(reference, computation);
+        // print the engines side by side
+        System.out.println("summary:");
+        System.out.println(String.format("%-16s %s", "engine", SUMMARY_HEADER));
+        for (String row : summary) {
+            System.out.println(row);
+        }
 
     }
 
@@ -77,7 +164,7 @@ public class PrimeComputerTester {
      * @return an {@code Iterable} object over the list of primes;
      * {@code Iterator.next()} returns the primes in ascending order.
      */
-    private static Iterable<Long> getPrimes(long max) {
+    static Iterable<Long> getPrimes(long max) {
         List<Long> primes = new ArrayList<>();
         for (long candidate = 1; candidate < max; candidate += 1) {
             if (isPrime(candidate)) {
@@ -95,6 +182,7 @@ public class PrimeComputerTester {
         // default values
         long max = 10_000_000;
         int iterations = 10;
+        int warmups = 3;
 
         // check command line arguments
         try {
@@ -106,63 +194,182 @@ public class PrimeComputerTester {
                 iterations = Integer.parseInt(args[1]);
             }
             if (args.length >= 3) {
+                warmups = Integer.parseInt(args[2]);
+            }
+            if (args.length >= 4) {
                 throw new IllegalArgumentException("too many arguments");
             }
+            if (iterations < 1 || warmups < 0) {
+                throw new IllegalArgumentException("invalid number of iterations");
+            }
 
         } catch (IllegalArgumentException e) {
-            System.err.println("usage: PrimeComputerTester [max [#iterations]]");
+            System.err.println("usage: PrimeComputerTester [max [#iterations [#warmup]]]");
             System.exit(1);
         }
 
         // return final values
-        return new long[]{max, iterations};
+        return new long[]{max, iterations, warmups};
 
     }
 
+    /**
+     * Runs and times the specified method. Each timed iteration also iterates
+     * the result, so that lazy results, which compute their primes as they
+     * are iterated, are measured as well. In checksum mode, a retained result
+     * keeps the object returned by the method, from which the primes of the
+     * differing segments are collected again.
+     */
     private static TestResult performTest(String description, long[] arguments,
-                                          Function<Long, Iterable<Long>> method) {
+                                          Function<Long, Iterable<Long>> method, boolean retained) {
 
         // set the test up
         long max = arguments[0];
         long iterations = arguments[1];
+        long warmups = arguments[2];
         System.out.println("testing " + description + "...");
 
-        // perform the test
-        long elapsed = System.currentTimeMillis();
+        // warm the JIT and the pools up, untimed
+        for (int i = 0; i < warmups; i++) {
+            System.out.println("- warmup #" + i);
+            count(method.apply(max));
+        }
+
+        // perform the test, timing each iteration apart
+        long[] samples = new long[(int) iterations];
         Iterable<Long> iterable = Collections.emptyList();
+        MemoryProfile memory = new MemoryProfile();
         for (int i = 0; i < iterations; i++) {
             System.out.println("- iteration #" + i);
+            long start = System.nanoTime();
             iterable = method.apply(max);
+            count(iterable);
+            samples[i] = System.nanoTime() - start;
         }
-        elapsed = System.currentTimeMillis() - elapsed;
-        List<Long> primes = new ArrayList<>();
-        iterable.forEach(p -> {
-            primes.add(p);
-        });
+        memory.stop(iterations);
+        Timings timings = new Timings(samples);
+        TestResult result = "checksum".equals(System.getProperty(VERIFY_PROPERTY))
+                ? new TestResult(retained ? iterable : null, new Checksums(max, iterable), timings, memory)
+                : new TestResult(collect(iterable, prime -> true), timings, memory);
 
         // print and return test results
-        System.out.println("#primes: " + primes.size());
-        System.out.println("elapsed: " + elapsed + " ms");
+        System.out.println("#primes: " + result.getCount());
+        System.out.println("elapsed: " + timings);
+        System.out.println("memory: " + memory);
+
+        return result;
 
-        return new TestResult(primes, elapsed);
+    }
+
+    /**
+     * Runs each selected engine with 1, 2, 4... threads, up to
+     * {@link PrimeComputer#threadCount()} threads, for several upper bounds,
+     * and prints a table of the median times. Each point runs on a
+     * {@link PrimeComputer} of its own, created before the warmup, so that the
+     * pool creation is not measured; the timed iterations also iterate the
+     * results, like {@link #performTest}. For each point the table gives,
+     * against the single-thread median of the same upper bound:
+     * <ul>
+     * <li> the speedup {@code S = T(1) / T(p)};
+     * <li> the parallel efficiency {@code E = S / p};
+     * <li> the Karp-Flatt metric {@code e = (1/S - 1/p) / (1 - 1/p)}, the
+     * serial fraction of the run that would explain the speedup; a fraction
+     * growing with {@code p} points to parallel overhead rather than to
+     * serial code.
+     * </ul>
+     * The number of primes of each run is checked against
+     * {@link PrimeCounting#countPrimes(long)}.
+     */
+    private static void sweep(long[] arguments) {
+
+        long max = arguments[0];
+        long iterations = arguments[1];
+        long warmups = arguments[2];
+        for (PrimeEngine engine : PrimeEngines.select(System.getProperty(ENGINE_PROPERTY))) {
+            sweep(engine, max, iterations, warmups);
+        }
 
     }
 
-    private static void compareResults(TestResult reference, TestResult computed) {
+    private static void sweep(PrimeEngine engine, long max, long iterations, long warmups) {
+
+        // 1, 2, 4... and the maximum itself
+        List<Integer> threadCounts = new ArrayList<>();
+        int maxThreads = PrimeComputer.threadCount();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        System.out.println("sweeping " + engine.getName() + ", " + iterations + " iterations after "
+                + warmups + " warmups...");
+        System.out.println(String.format("%14s %7s %12s %12s %8s %10s %9s %14s",
+                "max", "threads", "median (ms)", "p95 (ms)", "speedup", "efficiency", "serial",
+                "allocated (MB)"));
+
+        long decade = 1;
+        for (int i = 1; i < SWEEP_DECADES && max / (decade * 10) > 0; i++) {
+            decade *= 10;
+        }
+        for (; decade > 0; decade /= 10) {
+            long bound = max / decade;
+            long expected = PrimeCounting.countPrimes(bound);
+            double single = 0;
+            for (int threads : threadCounts) {
+                long[] samples = new long[(int) iterations];
+                MemoryProfile memory;
+                try (PrimeComputer computer = new PrimeComputer(PrimeComputer.PoolKind.FIXED, threads)) {
+                    for (int w = 0; w < warmups; w++) {
+                        count(engine.primes(computer, bound));
+                    }
+                    long count = 0;
+                    memory = new MemoryProfile();
+                    for (int w = 0; w < iterations; w++) {
+                        long start = System.nanoTime();
+                        count = count(engine.primes(computer, bound));
+                        samples[w] = System.nanoTime() - start;
+                    }
+                    memory.stop(iterations);
+                    if (count != expected) {
+                        System.out.println("! " + count + " primes below " + bound + ", expected " + expected);
+                    }
+                }
+                Timings timings = new Timings(samples);
+                if (threads == 1) {
+                    single = timings.getMedian();
+                }
+                double speedup = single / timings.getMedian();
+                double efficiency = speedup / threads;
+                String serial = threads == 1 ? "-" : String.format("%.4f",
+                        (1 / speedup - 1.0 / threads) / (1 - 1.0 / threads));
+                System.out.println(String.format("%14d %7d %12.3f %12.3f %8.2f %10.2f %9s %14s",
+                        bound, threads, timings.getMedian() / 1e6, timings.getP95() / 1e6,
+                        speedup, efficiency, serial, memory.formatAllocatedMegabytes()));
+            }
+        }
+
+    }
+
+    /**
+     * Prints the comparison of the computed primes to the reference, and
+     * returns its summary, in the columns of {@link #SUMMARY_HEADER}.
+     */
+    private static String compareResults(TestResult reference, TestResult computed) {
 
         // I- check correctness
         System.out.println("correctness:");
-        List<Long> referencePrimes = reference.getPrimes();
-        List<Long> computedPrimes = computed.getPrimes();
 
         // I.a- calculate precision and recall
         // determine false positives and false negatives
-        List<Long> falsePositives = substract(computedPrimes, referencePrimes);
-        List<Long> falseNegatives = substract(referencePrimes, computedPrimes);
+        Diff diff = reference.getChecksums() != null
+                ? diffChecksums(computed, reference)
+                : diff(sorted(computed), reference.getPrimes());
+        List<Long> falsePositives = diff.onlyInFirst;
+        List<Long> falseNegatives = diff.onlyInSecond;
         // calculate precision and recall
-        int falsePosCount = falsePositives.size();
-        int falseNegCount = falseNegatives.size();
-        int truePosCount = computedPrimes.size() - falsePosCount;
+        long falsePosCount = falsePositives.size();
+        long falseNegCount = falseNegatives.size();
+        long truePosCount = computed.getCount() - falsePosCount;
         double precision = (1.0 * truePosCount) / (truePosCount + falsePosCount);
         double recall = (1.0 * truePosCount) / (truePosCount + falseNegCount);
         // print values
@@ -172,17 +379,18 @@ public class PrimeComputerTester {
         System.out.println(", false negatives = " + falseNegatives);
 
         // I.b- check whether primes are sorted
-        double sortRate = sortRate(computedPrimes);
+        double sortRate = sortRate(computed);
         System.out.println("- primes are sorted = " + ((int) (100 * sortRate)) + "%");
 
         // II- check performances
         System.out.println("performance:");
-        double speedup = (1.0 * reference.getElapsed()) / computed.getElapsed();
+        // medians are robust to the outliers of GC pauses and noisy hosts
+        double speedup = reference.getTimings().getMedian() / computed.getTimings().getMedian();
         double maxSpeedup = Runtime.getRuntime().availableProcessors();
         double solutionSpeedup = maxSpeedup / 2; //  ESTIMATED
         System.out.println("- maximum theoretical speedup = " + maxSpeedup);
         System.out.println("- ESTIMATED solution speedup = " + solutionSpeedup);
-        System.out.println("- actual speedup = " + speedup);
+        System.out.println("- actual speedup (from medians) = " + speedup);
 
         // III- overall assessment
         double grade = 0.0;
@@ -196,37 +404,158 @@ public class PrimeComputerTester {
 
         System.out.println("*ESTIMATED* grade = " + ((int) grade) + " / 12");
 
+        MemoryProfile memory = computed.getMemory();
+        return String.format("%12.3f %8.2f %8d%% %5d%% %5d%% %5d %14s %4d %7d %15.1f",
+                computed.getTimings().getMedian() / 1e6, speedup, (int) (100 * precision),
+                (int) (100 * recall), (int) (100 * sortRate), (int) grade,
+                memory.formatAllocatedMegabytes(), memory.getCollections(),
+                memory.getCollectionMillis(), memory.getPoolPeaksBytes() / 1e6);
     }
 
-    private static double sortRate(List<Long> list) {
+    private static double sortRate(TestResult result) {
 
-        if (list.size() <= 1) {
+        if (result.getCount() <= 1) {
             return 0.0;
         }
 
-        int count = 1;
-        for (int i = 0; i < list.size() - 1; i += 1) {
-            if (list.get(i).compareTo(list.get(i + 1)) <= 0) {
-                count += 1;
-            }
+        // the first prime counts as sorted
+        return (1.0 + result.getSortedPairs()) / result.getCount();
+    }
+
+    /**
+     * Returns the primes of the specified result in ascending order: the
+     * primes themselves if they are sorted already, and a sorted copy
+     * otherwise.
+     */
+    private static long[] sorted(TestResult result) {
+        long[] primes = result.getPrimes();
+        if (result.getSortedPairs() == Math.max(0, primes.length - 1)) {
+            return primes;
+        }
+        long[] copy = primes.clone();
+        Arrays.parallelSort(copy);
+        return copy;
+    }
+
+    /**
+     * Diffs two sorted arrays of numbers, as sets. Large arrays are cut into
+     * chunks of values, at the quantiles of the second array, which are
+     * diffed in parallel.
+     */
+    private static Diff diff(long[] first, long[] second) {
+
+        int chunks = second.length < PARALLEL_DIFF_THRESHOLD
+                ? 1 : Runtime.getRuntime().availableProcessors() * DIFF_CHUNKS_PER_PROCESSOR;
+        // chunk k holds the values of [bounds[k], bounds[k + 1])
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = Long.MIN_VALUE;
+        for (int k = 1; k < chunks; k++) {
+            bounds[k] = second[(int) ((long) k * second.length / chunks)];
         }
+        bounds[chunks] = Long.MAX_VALUE;
+
+        Diff[] diffs = new Diff[chunks];
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int firstTo = k + 1 == chunks ? first.length : lowerBound(first, bounds[k + 1]);
+            int secondTo = k + 1 == chunks ? second.length : lowerBound(second, bounds[k + 1]);
+            diffs[k] = new Diff();
+            diffs[k].merge(first, lowerBound(first, bounds[k]), firstTo,
+                    second, lowerBound(second, bounds[k]), secondTo);
+        });
 
-        return 1.0 * count / list.size();
+        Diff diff = new Diff();
+        for (Diff chunk : diffs) {
+            diff.onlyInFirst.addAll(chunk.onlyInFirst);
+            diff.onlyInSecond.addAll(chunk.onlyInSecond);
+        }
+        return diff;
     }
 
-    private static <T> List<T> substract(Collection<T> collection1,
-                                         Collection<T> collection2) {
+    /**
+     * Diffs the computed primes against the reference primes by comparing the
+     * checksums of their segments: only the primes of the segments that
+     * differ are collected again from the computed result, and found again
+     * with {@link #isPrime} for the reference, then diffed.
+     */
+    private static Diff diffChecksums(TestResult computed, TestResult reference) {
+        Checksums checksums = computed.getChecksums();
+        BitSet differing = checksums.differingSegments(reference.getChecksums());
+        System.out.println("- segments = " + checksums.getSegments()
+                + ", differing checksums = " + differing.cardinality());
+        if (differing.isEmpty()) {
+            return new Diff();
+        }
+        LongPredicate filter = prime -> differing.get(checksums.segment(prime));
+        long[] computedPrimes = collect(computed.getIterable(), filter);
+        Arrays.parallelSort(computedPrimes);
+        // the segments are in ascending order, and so are their primes
+        long[] referencePrimes = differing.stream().parallel()
+                .mapToObj(checksums::referencePrimes)
+                .flatMapToLong(LongStream::of)
+                .toArray();
+        return diff(computedPrimes, referencePrimes);
+    }
 
-        List<T> difference = new ArrayList<>();
-        collection2 = new TreeSet<>(collection2); // to speed contains() up
+    /**
+     * Returns the index of the first element of the sorted array that is not
+     * less than the specified value.
+     */
+    private static int lowerBound(long[] array, long value) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
 
-        for (T element : collection1) {
-            if (!collection2.contains(element)) {
-                difference.add(element);
+    /**
+     * Returns the number of numbers of the iterable, without boxing them when
+     * the iterable is a {@link LongIterable}.
+     */
+    private static long count(Iterable<Long> iterable) {
+        long count = 0;
+        Iterator<Long> iterator = iterable.iterator();
+        if (iterator instanceof PrimitiveIterator.OfLong) {
+            PrimitiveIterator.OfLong primitive = (PrimitiveIterator.OfLong) iterator;
+            while (primitive.hasNext()) {
+                primitive.nextLong();
+                count++;
+            }
+        } else {
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
             }
         }
+        return count;
+    }
 
-        return difference;
+    /**
+     * Returns the numbers of the iterable accepted by the filter, in iteration
+     * order, without boxing them when the iterable is a {@link LongIterable}.
+     */
+    private static long[] collect(Iterable<Long> iterable, LongPredicate filter) {
+        long[] numbers = new long[1024];
+        int count = 0;
+        Iterator<Long> iterator = iterable.iterator();
+        PrimitiveIterator.OfLong primitive = iterator instanceof PrimitiveIterator.OfLong
+                ? (PrimitiveIterator.OfLong) iterator : null;
+        while (iterator.hasNext()) {
+            long number = primitive != null ? primitive.nextLong() : iterator.next();
+            if (filter.test(number)) {
+                if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, (int) Math.min(Integer.MAX_VALUE - 8, 2L * count));
+                }
+                numbers[count++] = number;
+            }
+        }
+        return Arrays.copyOf(numbers, count);
     }
 
     //
@@ -234,20 +563,364 @@ public class PrimeComputerTester {
     //
     private static class TestResult {
 
-        private final List<Long> primes;
-        private final long elapsed;
+        private final Iterable<Long> iterable;
+        private final long[] primes;
+        private final Checksums checksums;
+        private final long count;
+        private final long sortedPairs;
+        private final Timings timings;
+        private final MemoryProfile memory;
 
-        public TestResult(List<Long> primes, long elapsed) {
+        public TestResult(long[] primes, Timings timings, MemoryProfile memory) {
+            this.iterable = null;
             this.primes = primes;
-            this.elapsed = elapsed;
+            this.checksums = null;
+            this.count = primes.length;
+            long sorted = 0;
+            for (int i = 0; i < primes.length - 1; i++) {
+                if (primes[i] <= primes[i + 1]) {
+                    sorted++;
+                }
+            }
+            this.sortedPairs = sorted;
+            this.timings = timings;
+            this.memory = memory;
+        }
+
+        public TestResult(Iterable<Long> iterable, Checksums checksums, Timings timings,
+                          MemoryProfile memory) {
+            this.iterable = iterable;
+            this.primes = null;
+            this.checksums = checksums;
+            this.count = checksums.getCount();
+            this.sortedPairs = checksums.getSortedPairs();
+            this.timings = timings;
+            this.memory = memory;
         }
 
-        public List<Long> getPrimes() {
+        /**
+         * Returns the object computed by the tested method, if retained in
+         * checksum mode, or {@code null}.
+         */
+        public Iterable<Long> getIterable() {
+            return iterable;
+        }
+
+        /**
+         * Returns the primes, in iteration order, or {@code null} in checksum
+         * mode.
+         */
+        public long[] getPrimes() {
             return primes;
         }
 
-        public long getElapsed() {
-            return elapsed;
+        /**
+         * Returns the checksums of the primes, or {@code null} unless in
+         * checksum mode.
+         */
+        public Checksums getChecksums() {
+            return checksums;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSortedPairs() {
+            return sortedPairs;
+        }
+
+        public Timings getTimings() {
+            return timings;
+        }
+
+        public MemoryProfile getMemory() {
+            return memory;
+        }
+
+    }
+
+    /**
+     * Summary statistics of the elapsed times of the measured iterations, in
+     * nanoseconds.
+     */
+    private static class Timings {
+
+        private final long[] samples;
+
+        Timings(long[] samples) {
+            this.samples = samples.clone();
+            Arrays.sort(this.samples);
+        }
+
+        long getMin() {
+            return samples[0];
+        }
+
+        double getMedian() {
+            int middle = samples.length / 2;
+            return samples.length % 2 == 1
+                    ? samples[middle]
+                    : (samples[middle - 1] + samples[middle]) / 2.0;
+        }
+
+        /**
+         * Returns the 95th percentile, by the nearest-rank method.
+         */
+        long getP95() {
+            return samples[(int) Math.ceil(0.95 * samples.length) - 1];
+        }
+
+        double getMean() {
+            double sum = 0;
+            for (long sample : samples) {
+                sum += sample;
+            }
+            return sum / samples.length;
+        }
+
+        /**
+         * Returns the sample standard deviation, 0 for a single sample.
+         */
+        double getStandardDeviation() {
+            if (samples.length < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double squares = 0;
+            for (long sample : samples) {
+                squares += (sample - mean) * (sample - mean);
+            }
+            return Math.sqrt(squares / (samples.length - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("min %.3f ms, median %.3f ms, p95 %.3f ms, stddev %.3f ms (%d samples)",
+                    getMin() / 1e6, getMedian() / 1e6, getP95() / 1e6,
+                    getStandardDeviation() / 1e6, samples.length);
+        }
+
+    }
+
+    /**
+     * Memory used by the measured iterations of a test: the bytes allocated
+     * per iteration by all the threads, the garbage collections, and the sum
+     * of the peak usages of the heap pools. The profile starts on creation and
+     * ends with {@link #stop}.
+     * <p>
+     * The allocated bytes come from
+     * {@link com.sun.management.ThreadMXBean#getTotalThreadAllocatedBytes()},
+     * which also counts the threads that terminated during the iterations,
+     * such as the threads of the pools created on each call; they are not
+     * available on JVMs without this extension. The peaks of the heap memory
+     * pools are reset on creation; they are reached at different times, the
+     * young pools peaking just before each collection, so that their sum is an
+     * upper bound of the actual peak heap usage, not the peak itself.
+     */
+    private static class MemoryProfile {
+
+        private final long startAllocated;
+        private final long startCollections;
+        private final long startCollectionMillis;
+        private long allocatedPerIteration = -1;
+        private long collections;
+        private long collectionMillis;
+        private long poolPeaksBytes;
+
+        MemoryProfile() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            startCollections = collections();
+            startCollectionMillis = collectionMillis();
+            startAllocated = allocatedBytes();
+        }
+
+        void stop(long iterations) {
+            long allocated = allocatedBytes();
+            if (startAllocated >= 0 && allocated >= 0) {
+                allocatedPerIteration = (allocated - startAllocated) / iterations;
+            }
+            collections = collections() - startCollections;
+            collectionMillis = collectionMillis() - startCollectionMillis;
+            poolPeaksBytes = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    poolPeaksBytes += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+
+        private static long allocatedBytes() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean extension = (com.sun.management.ThreadMXBean) threads;
+                if (extension.isThreadAllocatedMemorySupported() && extension.isThreadAllocatedMemoryEnabled()) {
+                    return extension.getTotalThreadAllocatedBytes();
+                }
+            }
+            return -1;
+        }
+
+        private static long collections() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long collectionMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return millis;
+        }
+
+        /**
+         * Returns the megabytes allocated per iteration, or "n/a" if unknown.
+         */
+        String formatAllocatedMegabytes() {
+            return allocatedPerIteration < 0 ? "n/a" : String.format("%.1f", allocatedPerIteration / 1e6);
+        }
+
+        long getCollections() {
+            return collections;
+        }
+
+        long getCollectionMillis() {
+            return collectionMillis;
+        }
+
+        long getPoolPeaksBytes() {
+            return poolPeaksBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("allocated %s MB/iteration, %d GCs (%d ms), sum of heap pool peaks %.1f MB",
+                    formatAllocatedMegabytes(), collections, collectionMillis, poolPeaksBytes / 1e6);
+        }
+
+    }
+
+    /**
+     * The numbers only in the first and only in the second of two sets.
+     */
+    private static class Diff {
+
+        private final List<Long> onlyInFirst = new ArrayList<>();
+        private final List<Long> onlyInSecond = new ArrayList<>();
+
+        /**
+         * Merges the sorted ranges of the two arrays, in linear time,
+         * duplicates counting once.
+         */
+        void merge(long[] first, int i, int firstTo, long[] second, int j, int secondTo) {
+            while (i < firstTo || j < secondTo) {
+                if (j == secondTo || i < firstTo && first[i] < second[j]) {
+                    onlyInFirst.add(first[i]);
+                    i = skip(first, i, firstTo);
+                } else if (i == firstTo || second[j] < first[i]) {
+                    onlyInSecond.add(second[j]);
+                    j = skip(second, j, secondTo);
+                } else {
+                    i = skip(first, i, firstTo);
+                    j = skip(second, j, secondTo);
+                }
+            }
+        }
+
+        private static int skip(long[] array, int i, int to) {
+            long value = array[i];
+            do {
+                i++;
+            } while (i < to && array[i] == value);
+            return i;
+        }
+
+    }
+
+    /**
+     * Count and 64-bit rolling hash of the primes of each segment of the range
+     * {@code [0, max)}, computed in a single pass without keeping the primes.
+     * The hash depends on the order of the primes. Numbers outside the range
+     * fall in the first or the last segment.
+     */
+    private static class Checksums {
+
+        private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+        private final long max;
+        private final int shift;
+        private final long[] counts;
+        private final long[] hashes;
+        private long count;
+        private long sortedPairs;
+
+        Checksums(long max, Iterable<Long> primes) {
+            this.max = max;
+            int bits = Long.SIZE - Long.numberOfLeadingZeros(Math.max(1, max - 1));
+            this.shift = Math.max(CHECKSUM_SEGMENT_BITS, bits - CHECKSUM_SEGMENT_BITS);
+            int segments = (int) ((Math.max(1, max) - 1) >>> shift) + 1;
+            this.counts = new long[segments];
+            this.hashes = new long[segments];
+
+            Iterator<Long> iterator = primes.iterator();
+            PrimitiveIterator.OfLong primitive = iterator instanceof PrimitiveIterator.OfLong
+                    ? (PrimitiveIterator.OfLong) iterator : null;
+            long previous = Long.MIN_VALUE;
+            while (iterator.hasNext()) {
+                long prime = primitive != null ? primitive.nextLong() : iterator.next();
+                int segment = segment(prime);
+                counts[segment]++;
+                hashes[segment] = (hashes[segment] + prime) * MULTIPLIER;
+                if (count > 0 && previous <= prime) {
+                    sortedPairs++;
+                }
+                previous = prime;
+                count++;
+            }
+        }
+
+        int segment(long number) {
+            return number < 0 ? 0 : (int) Math.min(counts.length - 1, number >>> shift);
+        }
+
+        /**
+         * Returns the primes of the specified segment of {@code [0, max)},
+         * checked one by one with {@link #isPrime}.
+         */
+        long[] referencePrimes(int segment) {
+            long from = (long) segment << shift;
+            long to = segment == counts.length - 1 ? max : Math.min(max, (long) (segment + 1) << shift);
+            return LongStream.range(from, Math.max(from, to)).filter(PrimeComputerTester::isPrime).toArray();
+        }
+
+        int getSegments() {
+            return counts.length;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getSortedPairs() {
+            return sortedPairs;
+        }
+
+        BitSet differingSegments(Checksums other) {
+            BitSet differing = new BitSet(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != other.counts[i] || hashes[i] != other.hashes[i]) {
+                    differing.set(i);
+                }
+            }
+            return differing;
         }
 
     }
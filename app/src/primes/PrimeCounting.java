@@ -0,0 +1,147 @@
+package primes;
+
+/**
+ * Counts the primes below a bound without enumerating them, with the method of
+ * Lucy_Hedgehog, a simplification of the Legendre and Meissel-Lehmer methods.
+ * <p>
+ * Let {@code S(v, p)} be the number of integers in {@code [2, v]} that are
+ * either prime or have no prime factor up to {@code p}. Sieving out the
+ * multiples of a prime {@code p} removes from {@code S(v, p - 1)} the numbers
+ * {@code p * m} where {@code m} survived the previous primes:
+ * <pre>
+ * S(v, p) = S(v, p - 1) - (S(v / p, p - 1) - S(p - 1, p - 1))
+ * </pre>
+ * Only the values {@code v = n / i} are ever needed, and there are fewer than
+ * {@code 2 * sqrt(n)} of them, held in two tables. After the primes up to
+ * {@code sqrt(n)}, {@code S(n)} is the number of primes up to {@code n}. The
+ * count takes about {@code n^(3/4)} operations and {@code 16 * sqrt(n)} bytes.
+ *
+ * @see PrimeComputer#countPrimes(long)
+ */
+public class PrimeCounting {
+
+    /**
+     * Returns the number of primes below the specified upper bound.
+     *
+     * @param max the upper bound of primes (excluded)
+     * @return the number of primes less than {@code max}
+     * @throws IllegalArgumentException if the tables do not fit in an array
+     */
+    public static long countPrimes(long max) {
+        long n = max - 1;
+        if (n < 2) {
+            return 0;
+        }
+        long root = SegmentedSieve.sqrt(n);
+        if (root >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("max is too large: " + max);
+        }
+        int r = (int) root;
+
+        // small[v] = S(v) for v <= r, large[i] = S(n / i) for i <= r
+        long[] small = new long[r + 1];
+        long[] large = new long[r + 1];
+        for (int v = 1; v <= r; v++) {
+            small[v] = v - 1;
+        }
+        for (int i = 1; i <= r; i++) {
+            large[i] = n / i - 1;
+        }
+
+        for (int p = 2; p <= r; p++) {
+            if (small[p] == small[p - 1]) {
+                // p is not prime
+                continue;
+            }
+            long below = small[p - 1];
+            long square = (long) p * p;
+            int last = (int) Math.min(r, n / square);
+            for (int i = 1; i <= last; i++) {
+                // n / (i * p) <= r as soon as i * p > r
+                long d = (long) i * p;
+                long quotient = d <= r ? large[(int) d] : small[(int) (n / d)];
+                large[i] -= quotient - below;
+            }
+            for (int v = r; v >= square; v--) {
+                small[v] -= small[v / p] - below;
+            }
+        }
+        return large[1];
+    }
+
+    /**
+     * Returns a lower bound of the {@code k}-th prime, from the bound of Dusart
+     * (2010), valid for {@code k >= 3}:
+     * <pre>
+     * p(k) &gt;= k * (ln k + ln ln k - 1 + (ln ln k - 2.1) / ln k)
+     * </pre>
+     * The result is lowered a little to absorb the rounding errors.
+     *
+     * @param k the rank of the prime, at least 6
+     * @return a number not greater than the {@code k}-th prime
+     */
+    public static long nthPrimeLowerBound(long k) {
+        if (k < 6) {
+            throw new IllegalArgumentException("k is too small: " + k);
+        }
+        double log = Math.log(k);
+        double logLog = Math.log(log);
+        double bound = k * (log + logLog - 1 + (logLog - 2.1) / log);
+        // the 6th prime is 13: this keeps 2 out of the window
+        return Math.max(3, (long) (bound * (1 - 1e-9)) - 1);
+    }
+
+    /**
+     * Returns an upper bound of the {@code k}-th prime, from the bounds of
+     * Rosser ({@code k >= 6}) and Dusart (2010, {@code k >= 688383}):
+     * <pre>
+     * p(k) &lt;= k * (ln k + ln ln k)
+     * p(k) &lt;= k * (ln k + ln ln k - 1 + (ln ln k - 2) / ln k)
+     * </pre>
+     * The result is raised a little to absorb the rounding errors.
+     *
+     * @param k the rank of the prime, at least 6
+     * @return a number not less than the {@code k}-th prime
+     * @throws IllegalArgumentException if the bound exceeds {@code Long.MAX_VALUE}
+     */
+    public static long nthPrimeUpperBound(long k) {
+        if (k < 6) {
+            throw new IllegalArgumentException("k is too small: " + k);
+        }
+        double log = Math.log(k);
+        double logLog = Math.log(log);
+        double bound = k >= 688_383
+                ? k * (log + logLog - 1 + (logLog - 2) / log)
+                : k * (log + logLog);
+        bound = bound * (1 + 1e-9) + 1;
+        if (bound >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("k is too large: " + k);
+        }
+        return (long) bound;
+    }
+
+    /**
+     * Returns the number of bytes of the tables used to count the primes below
+     * the specified upper bound.
+     *
+     * @param max the upper bound of primes (excluded)
+     * @return the size of the tables, in bytes
+     */
+    public static long tableBytes(long max) {
+        return 2 * Long.BYTES * (SegmentedSieve.sqrt(Math.max(0, max - 1)) + 1);
+    }
+
+    /**
+     * Checks whether the tables used to count the primes below the specified
+     * upper bound fit comfortably in the heap, that is in a quarter of its
+     * maximum size.
+     *
+     * @param max the upper bound of primes (excluded)
+     * @return {@code true} if {@link #countPrimes(long)} may be used
+     */
+    public static boolean fits(long max) {
+        return SegmentedSieve.sqrt(Math.max(0, max - 1)) < Integer.MAX_VALUE - 8
+                && tableBytes(max) <= Runtime.getRuntime().maxMemory() / 4;
+    }
+
+}
@@ -0,0 +1,122 @@
+package primes;
+
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * An algorithm computing prime numbers, as seen by the tools that compare
+ * engines: the tester and the benchmarks. The engines are discovered with
+ * {@link java.util.ServiceLoader}, see {@link PrimeEngines}: an engine
+ * registered in a {@code META-INF/services/primes.PrimeEngine} file is tested
+ * and benchmarked like the built-in ones, without editing the tools.
+ * <p>
+ * An engine runs on the threads of the {@link PrimeComputer} it is given, and
+ * lists its optional operations in its {@link Capability capabilities}; the
+ * operations it does not support throw
+ * {@link UnsupportedOperationException}.
+ */
+public interface PrimeEngine {
+
+    /**
+     * The optional operations of an engine.
+     */
+    enum Capability {
+
+        /**
+         * Computes the primes of any range {@code [lo, hi)}, at a cost that
+         * depends on the width of the range rather than on {@code hi}, see
+         * {@link #primes(PrimeComputer, long, long)}.
+         */
+        RANGES,
+
+        /**
+         * Passes the primes to a consumer as they are found, in bounded
+         * memory, see {@link #forEachPrime}.
+         */
+        STREAMING,
+
+        /**
+         * Counts the primes without enumerating them, see
+         * {@link #countPrimes}.
+         */
+        COUNTING
+    }
+
+    /**
+     * Returns the name of this engine, unique among the registered engines.
+     *
+     * @return the name of this engine
+     */
+    String getName();
+
+    /**
+     * Returns the optional operations this engine supports.
+     *
+     * @return the capabilities of this engine
+     */
+    Set<Capability> getCapabilities();
+
+    /**
+     * Checks whether this engine supports the specified optional operation.
+     *
+     * @param capability the optional operation
+     * @return {@code true} if this engine supports the operation
+     */
+    default boolean supports(Capability capability) {
+        return getCapabilities().contains(capability);
+    }
+
+    /**
+     * Computes the primes up to the specified upper bound (excluded). A lazy
+     * result must be iterated while the computer is open.
+     *
+     * @param computer the computer whose threads run the engine
+     * @param max the upper bound of primes
+     * @return the primes, in ascending order
+     */
+    LongIterable primes(PrimeComputer computer, long max);
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)}.
+     *
+     * @param computer the computer whose threads run the engine
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return the primes of the range, in ascending order
+     * @throws UnsupportedOperationException unless the engine supports
+     * {@link Capability#RANGES}
+     */
+    default LongIterable primes(PrimeComputer computer, long lo, long hi) {
+        throw new UnsupportedOperationException(getName() + " does not support ranges");
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)} and passes them to the
+     * specified action, on the calling thread, as they are found.
+     *
+     * @param computer the computer whose threads run the engine
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param action the action applied to each prime, in ascending order
+     * @throws UnsupportedOperationException unless the engine supports
+     * {@link Capability#STREAMING}
+     */
+    default void forEachPrime(PrimeComputer computer, long lo, long hi, LongConsumer action) {
+        throw new UnsupportedOperationException(getName() + " does not support streaming");
+    }
+
+    /**
+     * Returns the number of primes of the range {@code [lo, hi)}.
+     *
+     * @param computer the computer whose threads run the engine
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @return the number of primes of the range
+     * @throws UnsupportedOperationException unless the engine supports
+     * {@link Capability#COUNTING}
+     */
+    default long countPrimes(PrimeComputer computer, long lo, long hi) {
+        throw new UnsupportedOperationException(getName() + " does not support counting");
+    }
+
+}
@@ -0,0 +1,253 @@
+package primes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Registry of the {@link PrimeEngine} implementations, discovered with
+ * {@link ServiceLoader} on the class path. The built-in engines, nested in
+ * this class, adapt each {@link PrimeComputer.Engine} and the
+ * {@link PrimeCache}, and are registered in the
+ * {@code META-INF/services/primes.PrimeEngine} file of the sources.
+ */
+public class PrimeEngines {
+
+    /**
+     * Returns the registered engines, in the order of the service files.
+     *
+     * @return the registered engines
+     * @throws IllegalStateException if two engines have the same name
+     */
+    public static List<PrimeEngine> all() {
+        List<PrimeEngine> engines = new ArrayList<>();
+        for (PrimeEngine engine : ServiceLoader.load(PrimeEngine.class)) {
+            for (PrimeEngine other : engines) {
+                if (other.getName().equals(engine.getName())) {
+                    throw new IllegalStateException("duplicate engine name: " + engine.getName());
+                }
+            }
+            engines.add(engine);
+        }
+        return Collections.unmodifiableList(engines);
+    }
+
+    /**
+     * Returns the registered engine of the specified name.
+     *
+     * @param name the name of the engine
+     * @return the engine of the specified name
+     * @throws IllegalArgumentException if no engine has this name
+     */
+    public static PrimeEngine get(String name) {
+        for (PrimeEngine engine : all()) {
+            if (engine.getName().equals(name)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("unknown engine: " + name);
+    }
+
+    /**
+     * Returns the registered engines of the specified names, or all of them if
+     * the names are {@code null}.
+     *
+     * @param names the comma-separated names of the engines, or {@code null}
+     * @return the engines, in the order of the names
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    public static List<PrimeEngine> select(String names) {
+        if (names == null) {
+            return all();
+        }
+        List<PrimeEngine> engines = new ArrayList<>();
+        for (String name : names.split(",")) {
+            engines.add(get(name.trim()));
+        }
+        return engines;
+    }
+
+    /**
+     * A built-in engine, computing the primes with
+     * {@link PrimeComputer#primes(long, PrimeComputer.Engine)}. Every built-in
+     * engine streams; the sieves also support ranges and counting.
+     */
+    abstract static class Builtin implements PrimeEngine {
+
+        private final PrimeComputer.Engine engine;
+        private final Set<Capability> capabilities;
+
+        Builtin(PrimeComputer.Engine engine, Set<Capability> capabilities) {
+            this.engine = engine;
+            this.capabilities = Collections.unmodifiableSet(capabilities);
+        }
+
+        @Override
+        public String getName() {
+            return engine.name();
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return capabilities;
+        }
+
+        @Override
+        public LongIterable primes(PrimeComputer computer, long max) {
+            return computer.primes(max, engine);
+        }
+
+        @Override
+        public LongIterable primes(PrimeComputer computer, long lo, long hi) {
+            if (!supports(Capability.RANGES)) {
+                return PrimeEngine.super.primes(computer, lo, hi);
+            }
+            return computer.primes(lo, hi);
+        }
+
+        @Override
+        public void forEachPrime(PrimeComputer computer, long lo, long hi, LongConsumer action) {
+            computer.forEachPrime(lo, hi, engine, action);
+        }
+
+        @Override
+        public long countPrimes(PrimeComputer computer, long lo, long hi) {
+            if (!supports(Capability.COUNTING)) {
+                return PrimeEngine.super.countPrimes(computer, lo, hi);
+            }
+            return lo == 0 ? computer.primeCount(hi) : computer.primeCount(lo, hi);
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#TRIAL_DIVISION}.
+     */
+    public static class TrialDivisionEngine extends Builtin {
+
+        public TrialDivisionEngine() {
+            super(PrimeComputer.Engine.TRIAL_DIVISION, EnumSet.of(Capability.STREAMING));
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#WHEEL}.
+     */
+    public static class WheelEngine extends Builtin {
+
+        public WheelEngine() {
+            super(PrimeComputer.Engine.WHEEL, EnumSet.of(Capability.STREAMING));
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#SMALL_PRIMES}.
+     */
+    public static class SmallPrimesEngine extends Builtin {
+
+        public SmallPrimesEngine() {
+            super(PrimeComputer.Engine.SMALL_PRIMES, EnumSet.of(Capability.STREAMING));
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#MILLER_RABIN}.
+     */
+    public static class MillerRabinEngine extends Builtin {
+
+        public MillerRabinEngine() {
+            super(PrimeComputer.Engine.MILLER_RABIN, EnumSet.of(Capability.STREAMING));
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#SEGMENTED_SIEVE}.
+     */
+    public static class SegmentedSieveEngine extends Builtin {
+
+        public SegmentedSieveEngine() {
+            super(PrimeComputer.Engine.SEGMENTED_SIEVE, EnumSet.allOf(Capability.class));
+        }
+    }
+
+    /**
+     * Adapts {@link PrimeComputer.Engine#LAZY_SIEVE}.
+     */
+    public static class LazySieveEngine extends Builtin {
+
+        public LazySieveEngine() {
+            super(PrimeComputer.Engine.LAZY_SIEVE, EnumSet.allOf(Capability.class));
+        }
+    }
+
+    /**
+     * Reads the primes from a {@link PrimeCache}, extending it on the threads
+     * of the computer when the upper bound is above the cached limit. The file
+     * of the cache is given by the {@link #FILE_PROPERTY} system property, and
+     * defaults to {@code primes.cache} in the temporary directory: the first
+     * call sieves the primes, the next ones, in this process or another, only
+     * read them.
+     */
+    public static class CachedSieveEngine implements PrimeEngine {
+
+        /**
+         * System property giving the file of the cache.
+         */
+        public static final String FILE_PROPERTY = "primes.cache";
+
+        @Override
+        public String getName() {
+            return "CACHED_SIEVE";
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return Collections.unmodifiableSet(EnumSet.of(Capability.STREAMING));
+        }
+
+        @Override
+        public LongIterable primes(PrimeComputer computer, long max) {
+            // the primes remain readable once the cache is closed
+            try (PrimeCache cache = new PrimeCache(file())) {
+                return computer.primes(max, cache);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void forEachPrime(PrimeComputer computer, long lo, long hi, LongConsumer action) {
+            PrimitiveIterator.OfLong primes = primes(computer, hi).iterator();
+            while (primes.hasNext()) {
+                long prime = primes.nextLong();
+                if (prime >= lo) {
+                    action.accept(prime);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+
+        private static Path file() {
+            String file = System.getProperty(FILE_PROPERTY);
+            return file != null ? Paths.get(file) : Paths.get(System.getProperty("java.io.tmpdir"), "primes.cache");
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package primes;
+
+/**
+ * Bounded buffer putting the results of chunks processed out of order back in
+ * chunk order. Producers put the result of chunk {@code i} as soon as it is
+ * ready; the consumer takes the results in ascending index order. A producer
+ * ahead of the consumer by the capacity of the buffer or more waits for room,
+ * so that the results held at any time never exceed the capacity, however
+ * large the range.
+ * <p>
+ * Producers must claim the chunks in ascending order, as the workers of a
+ * {@link ChunkScheduler} do: the chunk the consumer waits for is then always
+ * being processed by a producer that does not wait.
+ * <p>
+ * Either side may {@link #fail(Throwable) fail} the buffer, which wakes both
+ * sides up: a failed buffer rejects the calls waiting or to come.
+ *
+ * @param <T> the type of the chunk results
+ */
+public class ReorderBuffer<T> {
+
+    private final Object[] slots;
+    private long next;
+    private Throwable failure;
+
+    /**
+     * Creates an empty buffer, the consumer waiting for chunk 0.
+     *
+     * @param capacity the maximum number of results held at once
+     */
+    public ReorderBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * Puts the result of the specified chunk, waiting for the consumer to be
+     * less than the capacity of the buffer behind it.
+     *
+     * @param index the index of the chunk, not yet put
+     * @param result the result of the chunk, not {@code null}
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the buffer failed
+     */
+    public synchronized void put(long index, T result) throws InterruptedException {
+        while (failure == null && index >= next + slots.length) {
+            wait();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("buffer failed", failure);
+        }
+        slots[(int) (index % slots.length)] = result;
+        notifyAll();
+    }
+
+    /**
+     * Takes the result of the next chunk, waiting for it to be put.
+     *
+     * @return the result of the next chunk
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the buffer failed
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T take() throws InterruptedException {
+        int slot = (int) (next % slots.length);
+        while (failure == null && slots[slot] == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("chunk task failed", failure);
+        }
+        T result = (T) slots[slot];
+        slots[slot] = null;
+        next++;
+        notifyAll();
+        return result;
+    }
+
+    /**
+     * Fails the buffer, releasing the producers and the consumer. Only the
+     * first failure is kept.
+     *
+     * @param cause the cause of the failure
+     */
+    public synchronized void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        notifyAll();
+    }
+
+}
@@ -0,0 +1,283 @@
+package primes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Report of a parallel run of {@link PrimeComputer}: how long the run took, how
+ * each worker spent that time, and what each chunk cost. A worker is idle
+ * whenever it is not processing a chunk, in particular while waiting for the
+ * other workers to finish; together with the spread of the chunk times, the
+ * idle times show how well the load was balanced.
+ * <p>
+ * All the times are in nanoseconds; the start and finish times are relative
+ * to the start of the run.
+ */
+public class RunReport {
+
+    private final long wallNanos;
+    private final List<WorkerStats> workers;
+    private final List<ChunkStats> chunks;
+
+    /**
+     * Creates a report.
+     *
+     * @param wallNanos the elapsed time of the run
+     * @param workers the statistics of each worker
+     * @param chunks the statistics of each chunk, in any order
+     */
+    public RunReport(long wallNanos, List<WorkerStats> workers, List<ChunkStats> chunks) {
+        this.wallNanos = wallNanos;
+        this.workers = Collections.unmodifiableList(new ArrayList<>(workers));
+        List<ChunkStats> sorted = new ArrayList<>(chunks);
+        sorted.sort(Comparator.comparingLong(ChunkStats::getIndex));
+        this.chunks = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Returns the elapsed time of the run.
+     *
+     * @return the elapsed time
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Returns the statistics of each worker.
+     *
+     * @return the worker statistics, in worker order
+     */
+    public List<WorkerStats> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the statistics of each chunk.
+     *
+     * @return the chunk statistics, in range order
+     */
+    public List<ChunkStats> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Returns the idle time of the specified worker.
+     *
+     * @param worker the worker statistics
+     * @return the time the worker was not processing chunks
+     */
+    public long getIdleNanos(WorkerStats worker) {
+        return Math.max(0, wallNanos - worker.getBusyNanos());
+    }
+
+    /**
+     * Returns the idle time summed over all workers.
+     *
+     * @return the total idle time
+     */
+    public long getTotalIdleNanos() {
+        long idle = 0;
+        for (WorkerStats worker : workers) {
+            idle += getIdleNanos(worker);
+        }
+        return idle;
+    }
+
+    /**
+     * Returns the tail idle time: the time the workers spent waiting, once out
+     * of chunks, for the last worker to finish, summed over all workers.
+     *
+     * @return the tail idle time
+     */
+    public long getTailIdleNanos() {
+        long finish = 0;
+        for (WorkerStats worker : workers) {
+            finish = Math.max(finish, worker.getFinishNanos());
+        }
+        long tail = 0;
+        for (WorkerStats worker : workers) {
+            tail += finish - worker.getFinishNanos();
+        }
+        return tail;
+    }
+
+    /**
+     * Returns the time of the longest chunk.
+     *
+     * @return the maximum chunk time, or 0 if there is no chunk
+     */
+    public long getMaxChunkNanos() {
+        long max = 0;
+        for (ChunkStats chunk : chunks) {
+            max = Math.max(max, chunk.getElapsedNanos());
+        }
+        return max;
+    }
+
+    /**
+     * Returns the mean time of the chunks.
+     *
+     * @return the mean chunk time, or 0 if there is no chunk
+     */
+    public double getMeanChunkNanos() {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        double sum = 0;
+        for (ChunkStats chunk : chunks) {
+            sum += chunk.getElapsedNanos();
+        }
+        return sum / chunks.size();
+    }
+
+    /**
+     * Returns the imbalance of the chunks, that is the ratio of the maximum to
+     * the mean chunk time: 1 when all the chunks cost the same.
+     *
+     * @return the chunk imbalance, or 1 if there is no chunk
+     */
+    public double getChunkImbalance() {
+        double mean = getMeanChunkNanos();
+        return mean > 0 ? getMaxChunkNanos() / mean : 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("wall: %.3f ms, idle: %.3f ms, tail idle: %.3f ms%n",
+                wallNanos / 1e6, getTotalIdleNanos() / 1e6, getTailIdleNanos() / 1e6));
+        builder.append(String.format("chunks: %d, max: %.3f ms, mean: %.3f ms, max/mean: %.2f%n",
+                chunks.size(), getMaxChunkNanos() / 1e6, getMeanChunkNanos() / 1e6,
+                getChunkImbalance()));
+        for (WorkerStats worker : workers) {
+            builder.append(String.format("- %s: %d chunks, busy %.3f ms, idle %.3f ms%n",
+                    worker.getThreadName(), worker.getChunks(),
+                    worker.getBusyNanos() / 1e6, getIdleNanos(worker) / 1e6));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Statistics of one worker of a run.
+     */
+    public static class WorkerStats {
+
+        private final String threadName;
+        private final long chunks;
+        private final long busyNanos;
+        private final long finishNanos;
+
+        public WorkerStats(String threadName, long chunks, long busyNanos, long finishNanos) {
+            this.threadName = threadName;
+            this.chunks = chunks;
+            this.busyNanos = busyNanos;
+            this.finishNanos = finishNanos;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getChunks() {
+            return chunks;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        public long getFinishNanos() {
+            return finishNanos;
+        }
+
+    }
+
+    /**
+     * Statistics of one chunk of a run. The chunk tasks fill in the counts; the
+     * {@link ChunkScheduler} adds the thread and the timing.
+     */
+    public static class ChunkStats {
+
+        private final long index;
+        private final long from;
+        private final long to;
+        private final long candidates;
+        private final long primes;
+        private final String threadName;
+        private final long startNanos;
+        private final long elapsedNanos;
+
+        /**
+         * Creates the statistics of a chunk, without thread nor timing.
+         *
+         * @param index the index of the chunk in the range
+         * @param from the lower bound of the chunk (included)
+         * @param to the upper bound of the chunk (excluded)
+         * @param candidates the number of candidates examined
+         * @param primes the number of primes found
+         */
+        public ChunkStats(long index, long from, long to, long candidates, long primes) {
+            this(index, from, to, candidates, primes, null, 0, 0);
+        }
+
+        private ChunkStats(long index, long from, long to, long candidates, long primes,
+                           String threadName, long startNanos, long elapsedNanos) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.candidates = candidates;
+            this.primes = primes;
+            this.threadName = threadName;
+            this.startNanos = startNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        ChunkStats withTiming(String threadName, long startNanos, long elapsedNanos) {
+            return new ChunkStats(index, from, to, candidates, primes, threadName, startNanos, elapsedNanos);
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public long getCandidates() {
+            return candidates;
+        }
+
+        public long getPrimes() {
+            return primes;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d [%d, %d) on %s: %d candidates, %d primes, start %.3f ms, %.3f ms",
+                    index, from, to, threadName, candidates, primes,
+                    startNanos / 1e6, elapsedNanos / 1e6);
+        }
+
+    }
+
+}
@@ -0,0 +1,243 @@
+package primes;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Computes prime numbers with a segmented sieve of Eratosthenes. The base
+ * primes up to the square root of the upper bound are computed once; the range
+ * is then cut into segments small enough to stay in the CPU caches, which are
+ * sieved in parallel.
+ *
+ * @see PrimeComputer#computePrimes(long, PrimeComputer.Engine)
+ */
+public class SegmentedSieve {
+
+    /**
+     * Number of integers covered by one segment: the store keeps one bit per odd
+     * number, so that a segment spans 32 KiB of the store and fits in the L1
+     * data cache. It is a multiple of {@link OddBitSieve#WORD_SPAN}.
+     */
+    public static final int SEGMENT_SIZE = 1 << 19;
+
+    /**
+     * Square root of {@code Long.MAX_VALUE}, rounded down.
+     */
+    private static final long MAX_SQRT = 3_037_000_499L;
+
+    /**
+     * Largest upper bound (excluded) of a sieved range, about 4.61 * 10^18:
+     * the base primes are held as {@code int}, so that their limit, the square
+     * root of the upper bound, must stay below {@code Integer.MAX_VALUE}.
+     */
+    public static final long MAX_BOUND = (long) Integer.MAX_VALUE * Integer.MAX_VALUE;
+
+    /**
+     * Computes the primes up to the specified upper bound (excluded), sieving the
+     * segments on the specified pool, and publishes the report of the run to
+     * the specified consumer.
+     *
+     * @param max the upper bound of primes
+     * @param pool the pool running the segment tasks
+     * @param threads the number of threads of the pool
+     * @param reports the consumer of the run report
+     * @return the store of the primes
+     */
+    public static OddBitSieve computePrimes(long max, ExecutorService pool, int threads,
+                                            Consumer<RunReport> reports) {
+        return computePrimes(0, Math.max(0, max), pool, threads, reports);
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)}, sieving the segments on
+     * the specified pool, and publishes the report of the run to the specified
+     * consumer. Only the base primes up to the square root of {@code hi} are
+     * needed, so that the cost depends on the width of the range rather than
+     * on {@code hi}. The segments are handed out by a {@link ChunkScheduler},
+     * each segment clearing its own words of the store.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param pool the pool running the segment tasks
+     * @param threads the number of threads of the pool
+     * @param reports the consumer of the run report
+     * @return the store of the primes
+     */
+    public static OddBitSieve computePrimes(long lo, long hi, ExecutorService pool, int threads,
+                                            Consumer<RunReport> reports) {
+        return computePrimes(lo, hi, new ChunkScheduler(pool, threads), reports);
+    }
+
+    /**
+     * Computes the primes of the range {@code [lo, hi)}, sieving the segments
+     * with the specified scheduler, and publishes the report of the run to the
+     * specified consumer.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param scheduler the scheduler handing out the segments
+     * @param reports the consumer of the run report
+     * @return the store of the primes
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public static OddBitSieve computePrimes(long lo, long hi, ChunkScheduler scheduler,
+                                            Consumer<RunReport> reports) {
+
+        checkBound(hi);
+        OddBitSieve primes = new OddBitSieve(lo, hi);
+        if (hi <= 9) {
+            return primes;
+        }
+
+        // compute the base primes once, they are shared read-only by all tasks
+        int[] basePrimes = basePrimes(sqrt(hi - 1));
+
+        // segments start on a word boundary, so that no two tasks share a word
+        long origin = lo / OddBitSieve.WORD_SPAN * OddBitSieve.WORD_SPAN;
+        RunReport report = scheduler.run(origin, hi, SEGMENT_SIZE,
+                (index, low, high) -> {
+                    sieve(primes, low, high, basePrimes);
+                    long from = Math.max(lo, low);
+                    return new RunReport.ChunkStats(index, from, high, (high - from + (from & 1)) / 2,
+                            primes.count(from, high));
+                });
+        reports.accept(report);
+
+        return primes;
+    }
+
+    /**
+     * Counts the primes of the range {@code [lo, hi)}, sieving the segments
+     * with the specified scheduler, and publishes the report of the run to the
+     * specified consumer. Each segment is sieved in a store of its own, counted
+     * and dropped: the memory used is one segment per thread, whatever the
+     * width of the range.
+     *
+     * @param lo the lower bound of primes (included)
+     * @param hi the upper bound of primes (excluded)
+     * @param scheduler the scheduler handing out the segments
+     * @param reports the consumer of the run report
+     * @return the number of primes of the range
+     * @throws IllegalArgumentException if {@code hi} exceeds
+     * {@link SegmentedSieve#MAX_BOUND}
+     */
+    public static long countPrimes(long lo, long hi, ChunkScheduler scheduler,
+                                   Consumer<RunReport> reports) {
+
+        if (lo < 0 || hi < lo) {
+            throw new IllegalArgumentException("invalid range: [" + lo + ", " + hi + ")");
+        }
+        checkBound(hi);
+        int[] basePrimes = basePrimes(sqrt(Math.max(0, hi - 1)));
+
+        RunReport report = scheduler.run(lo, hi, SEGMENT_SIZE,
+                (index, low, high) -> {
+                    OddBitSieve segment = new OddBitSieve(low, high);
+                    sieve(segment, low, high, basePrimes);
+                    return new RunReport.ChunkStats(index, low, high, (high - low + (low & 1)) / 2,
+                            segment.count());
+                });
+        reports.accept(report);
+
+        long count = 0;
+        for (RunReport.ChunkStats chunk : report.getChunks()) {
+            count += chunk.getPrimes();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the primes up to the specified limit (included), using a plain
+     * sieve of Eratosthenes on an odd-only store.
+     *
+     * @param limit the limit of the base primes, at most
+     * {@code Integer.MAX_VALUE - 1}
+     * @return the base primes, in ascending order
+     */
+    public static int[] basePrimes(long limit) {
+        if (limit >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("limit is too large: " + limit);
+        }
+        OddBitSieve primes = new OddBitSieve(limit + 1);
+        for (long i = 3; i > 0 && i * i <= limit; i = primes.next(i + 2)) {
+            for (long multiple = i * i; multiple <= limit; multiple += 2 * i) {
+                primes.clear(multiple);
+            }
+        }
+        int[] basePrimes = new int[(int) primes.count()];
+        int count = 0;
+        if (limit >= 2) {
+            basePrimes[count++] = 2;
+        }
+        for (long prime = primes.next(3); prime > 0; prime = primes.next(prime + 2)) {
+            basePrimes[count++] = (int) prime;
+        }
+        return basePrimes;
+    }
+
+    /**
+     * Checks that the specified upper bound of a range does not exceed
+     * {@link #MAX_BOUND}.
+     *
+     * @param hi the upper bound of the range (excluded)
+     * @throws IllegalArgumentException if {@code hi} is too large to sieve
+     */
+    public static void checkBound(long hi) {
+        if (hi > MAX_BOUND) {
+            throw new IllegalArgumentException("upper bound is too large to sieve: " + hi
+                    + ", at most " + MAX_BOUND);
+        }
+    }
+
+    /**
+     * Clears from the store the odd composites of the range {@code [low, high)},
+     * using the specified base primes, which must reach the square root of
+     * {@code high - 1}.
+     *
+     * @param primes the store to sieve
+     * @param low the lower bound of the range (included)
+     * @param high the upper bound of the range (excluded)
+     * @param basePrimes the base primes, in ascending order
+     */
+    public static void sieve(OddBitSieve primes, long low, long high, int[] basePrimes) {
+        // skip 2, the store holds odd numbers only
+        for (int i = 1; i < basePrimes.length; i++) {
+            long prime = basePrimes[i];
+            long square = prime * prime;
+            if (square >= high) {
+                break;
+            }
+            long first = Math.max(square, low + (prime - low % prime) % prime);
+            if ((first & 1) == 0) {
+                first += prime;
+            }
+            // stop before the next multiple, which may overflow near Long.MAX_VALUE
+            for (long multiple = first; multiple < high; multiple += 2 * prime) {
+                primes.clear(multiple);
+                if (multiple >= high - 2 * prime) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the floor of the square root of the specified number, without the
+     * rounding errors of {@code Math.sqrt} for large values.
+     *
+     * @param number a non-negative number
+     * @return the integer square root of {@code number}
+     */
+    public static long sqrt(long number) {
+        long root = (long) Math.sqrt(number);
+        while (root * root > number) {
+            root--;
+        }
+        while (root < MAX_SQRT && (root + 1) * (root + 1) <= number) {
+            root++;
+        }
+        return root;
+    }
+
+}
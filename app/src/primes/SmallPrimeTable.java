@@ -0,0 +1,121 @@
+package primes;
+
+/**
+ * Primality test by trial division by primes only, taken from an immutable
+ * table of the primes up to some limit. Dividing by primes rather than by all
+ * the odd numbers skips the composite divisors such as 9, 15 or 21: near
+ * 10^12, this makes about 12 times fewer divisions.
+ * <p>
+ * Tables are shared: {@link #upTo} returns the current shared table when it
+ * reaches the requested limit, and grows it otherwise. A table never changes
+ * once built, so that any number of threads may read it without
+ * synchronization.
+ * <p>
+ * Tables stop growing at {@link #MAX_LIMIT}: the numbers whose square root is
+ * beyond it, from about 4.6 * 10^18, are divided by the primes of the table and
+ * then by the numbers of the {@link Wheel} up to their square root.
+ */
+public class SmallPrimeTable implements PrimalityTest {
+
+    /**
+     * The largest limit of a table, so that its sieve fits in an array.
+     */
+    public static final long MAX_LIMIT = Integer.MAX_VALUE - 1;
+
+    private static volatile SmallPrimeTable shared = new SmallPrimeTable(0);
+
+    private final long limit;
+    private final int[] primes;
+
+    private SmallPrimeTable(long limit) {
+        this.limit = limit;
+        this.primes = SegmentedSieve.basePrimes(limit);
+    }
+
+    /**
+     * Returns a table of the primes up to at least the specified limit. The
+     * shared table is grown to at least twice its limit when it is too small,
+     * so that successive requests do not rebuild it each time. Beyond
+     * {@link #MAX_LIMIT}, the table of this limit is returned.
+     *
+     * @param limit the limit the table must reach (included)
+     * @return a table reaching {@code limit}, or {@link #MAX_LIMIT}
+     */
+    public static SmallPrimeTable upTo(long limit) {
+        SmallPrimeTable table = shared;
+        limit = Math.min(MAX_LIMIT, limit);
+        if (table.limit >= limit) {
+            return table;
+        }
+        synchronized (SmallPrimeTable.class) {
+            table = shared;
+            if (table.limit < limit) {
+                table = new SmallPrimeTable(Math.min(MAX_LIMIT, Math.max(limit, 2 * table.limit)));
+                shared = table;
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Returns the limit (included) of the primes of this table.
+     *
+     * @return the limit of this table
+     */
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * Returns the number of primes of this table.
+     *
+     * @return the size of this table
+     */
+    public int size() {
+        return primes.length;
+    }
+
+    /**
+     * Checks whether the specified natural number is prime, dividing it by the
+     * primes of the table up to its square root. Numbers whose square root is
+     * beyond the limit of this table are checked with a larger shared table,
+     * and beyond {@link #MAX_LIMIT} with the numbers of the wheel as well.
+     *
+     * @param number the natural number to check
+     * @return {@code true} if the specified number is prime and {@code false}
+     * otherwise.
+     */
+    @Override
+    public boolean isPrime(long number) {
+        if (number < 0) {
+            throw new IllegalArgumentException("number is not natural");
+        }
+        if (number < 2) {
+            return false;
+        }
+        long root = SegmentedSieve.sqrt(number);
+        if (root > limit && limit < MAX_LIMIT) {
+            return upTo(root).isPrime(number);
+        }
+        for (int prime : primes) {
+            if (prime > root) {
+                return true;
+            }
+            if (number % prime == 0) {
+                return number == prime;
+            }
+        }
+        // the table is full: go on with the wheel past its limit
+        long divisor = Wheel.next(limit + 1);
+        int spoke = Wheel.spoke(divisor);
+        while (divisor <= root) {
+            if (number % divisor == 0) {
+                return false;
+            }
+            divisor += Wheel.gap(spoke);
+            spoke = spoke + 1 == Wheel.RESIDUES.length ? 0 : spoke + 1;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,132 @@
+package primes;
+
+import java.util.Arrays;
+
+/**
+ * Wheel factorization modulo 210 = 2 * 3 * 5 * 7. Only 48 residues modulo 210
+ * are coprime to 210; all the other numbers, 77% of them, are multiples of 2,
+ * 3, 5 or 7. The wheel enumerates the numbers of these 48 residues, both as
+ * candidates for primality and as divisors for trial division.
+ * <p>
+ * The numbers enumerated are identified by their spoke, that is the index of
+ * their residue in {@link #RESIDUES}; {@link #gap} gives the distance from a
+ * spoke to the next one.
+ */
+public class Wheel {
+
+    /**
+     * The circumference of the wheel.
+     */
+    public static final int MODULUS = 2 * 3 * 5 * 7;
+
+    /**
+     * The primes the wheel skips the multiples of.
+     */
+    public static final int[] PRIMES = {2, 3, 5, 7};
+
+    /**
+     * The residues modulo 210 coprime to 210, in ascending order.
+     */
+    public static final int[] RESIDUES;
+
+    private static final int[] GAPS;
+    private static final int[] SPOKES = new int[MODULUS];
+    private static final int[] OFFSETS = new int[MODULUS];
+
+    static {
+        int[] residues = new int[MODULUS];
+        int count = 0;
+        for (int i = 0; i < MODULUS; i++) {
+            if (i % 2 != 0 && i % 3 != 0 && i % 5 != 0 && i % 7 != 0) {
+                residues[count++] = i;
+            }
+        }
+        RESIDUES = Arrays.copyOf(residues, count);
+        GAPS = new int[count];
+        for (int i = 0; i < count; i++) {
+            int next = i + 1 < count ? RESIDUES[i + 1] : RESIDUES[0] + MODULUS;
+            GAPS[i] = next - RESIDUES[i];
+        }
+        // for each residue, the offset to the next coprime residue and its spoke
+        int spoke = count - 1;
+        for (int i = MODULUS - 1; i >= 0; i--) {
+            if (RESIDUES[spoke] < i) {
+                OFFSETS[i] = RESIDUES[0] + MODULUS - i;
+                SPOKES[i] = 0;
+            } else {
+                if (spoke > 0 && RESIDUES[spoke - 1] >= i) {
+                    spoke--;
+                }
+                OFFSETS[i] = RESIDUES[spoke] - i;
+                SPOKES[i] = spoke;
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest number greater than or equal to the specified one
+     * that is coprime to 210.
+     *
+     * @param number a natural number
+     * @return the next number on the wheel
+     */
+    public static long next(long number) {
+        return number + OFFSETS[(int) (number % MODULUS)];
+    }
+
+    /**
+     * Returns the spoke of the specified number of the wheel.
+     *
+     * @param number a number coprime to 210
+     * @return the index of its residue in {@link #RESIDUES}
+     */
+    public static int spoke(long number) {
+        return SPOKES[(int) (number % MODULUS)];
+    }
+
+    /**
+     * Returns the distance from the numbers of the specified spoke to the next
+     * numbers of the wheel.
+     *
+     * @param spoke a spoke of the wheel
+     * @return the gap to the next spoke
+     */
+    public static int gap(int spoke) {
+        return GAPS[spoke];
+    }
+
+    /**
+     * Checks whether the specified natural number is prime, by trial division
+     * by 2, 3, 5, 7 and then by the numbers of the wheel up to the square root.
+     *
+     * @param number the natural number to check
+     * @return {@code true} if the specified number is prime and {@code false}
+     * otherwise.
+     */
+    public static boolean isPrime(long number) {
+        if (number < 0) {
+            throw new IllegalArgumentException("number is not natural");
+        }
+        if (number < 2) {
+            return false;
+        }
+        for (int prime : PRIMES) {
+            if (number % prime == 0) {
+                return number == prime;
+            }
+        }
+        long limit = SegmentedSieve.sqrt(number);
+        // start at 11, the first number of the wheel after 1
+        long divisor = RESIDUES[1];
+        int spoke = 1;
+        while (divisor <= limit) {
+            if (number % divisor == 0) {
+                return false;
+            }
+            divisor += GAPS[spoke];
+            spoke = spoke + 1 == GAPS.length ? 0 : spoke + 1;
+        }
+        return true;
+    }
+
+}